@@ -1,30 +1,48 @@
 package compression;
 
 import interfaces.IGenericCompression;
-import com.github.zachcloud.reader.BinaryReader;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
- * Based off source: https://chromium.googlesource.com/chromiumos/third_party/alsa-lib/+/808ce5deb3550e522a0c3087f1c851bdf87d3464/src/pcm/pcm_adpcm.c
- * And: https://github.com/inwc3/JMPQ3/blob/master/src/main/java/systems/crigges/jmpq3/compression/ADPCM.java
+ * Represents the MPQ flavour of IMA ADPCM, used for mono and stereo sounds.
+ * Samples are 16 bit little endian; each one after the first of every
+ * channel is coded in a byte, or replaced by a marker byte that only
+ * changes the step size.
+ * <p>
+ * Based off source: https://github.com/ladislav-zezula/StormLib/blob/master/src/adpcm/adpcm.cpp
+ * <p>
+ * The state of each channel is a predicted sample and a step index, kept
+ * in locals; with two channels the current and other channel's state are
+ * swapped when the channel changes.
  */
 public final class AdpcmCompression implements IGenericCompression {
 
-    private final int totalChannels;
-
-    private static final int WRITE_CURRENT_VALUE_MAGNITUDE = 0;
-    private static final int ADVANCE_PERIOD_MAGNITUDE = 1;
-    private static final int ADVANCE_CHANNEL_MAGNITUDE = 2;
+    /* Compression level used when none is given, the one archives use by default */
+    public static final int DEFAULT_COMPRESSION_LEVEL = 5;
 
     private static final int MAX_CHANNELS = 2;
-    /* First table lookup for Ima-ADPCM quantizer */
-    private static final int[] INDEX_ADJUST = {-1, -1, -1, -1, 2, 4, 6, 8};
-    /* Second table lookup for Ima-ADPCM quantizer */
-    private static final short[] STEP_SIZE = {
+    private static final int MIN_COMPRESSION_LEVEL = 2;
+    private static final int MAX_COMPRESSION_LEVEL = 7;
+
+    private static final int INITIAL_STEP_INDEX = 0x2C;
+    private static final int MAX_STEP_INDEX = 0x58;
+
+    /* Marker bytes */
+    private static final int REPEAT_SAMPLE = 0x80;       // Write the last sample again, decrease step index by 1
+    private static final int INCREASE_STEP_INDEX = 0x81; // Increase step index by 8
+    private static final int SKIP = 0x82;                // Nothing to do
+    // 0x83 to 0xFF decrease the step index by 8
+
+    private static final int MARKER_FLAG = 0x80;
+    private static final int SIGN_FLAG = 0x40;
+
+    /* Change to the step index after a sample, by its low 5 bits */
+    private static final int[] NEXT_STEP_INDEX = {
+            -1, 0, -1, 4, -1, 2, -1, 6, -1, 1, -1, 5, -1, 3, -1, 7,
+            -1, 1, -1, 5, -1, 3, -1, 7, -1, 2, -1, 4, -1, 6, -1, 8
+    };
+    private static final int[] STEP_SIZE = {
             7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
             19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
             50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
@@ -36,10 +54,8 @@ public final class AdpcmCompression implements IGenericCompression {
             15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
     };
 
-    private static final int SIGN_FLAG = 0x80;
-    private static final int MAGNITUDE_FLAG = 0x7F;
-    private static final int DIRECTION_FLAG = 0x40;
-    private static final int STEP_CHANGE_FLAG = 0x1F;
+    private final int totalChannels;
+    private final int compressionLevel;
 
     /**
      * Creates a new Adpcm compression
@@ -47,10 +63,33 @@ public final class AdpcmCompression implements IGenericCompression {
      * @param totalChannels What totalChannels to use (1 = MONO, 2 = STEREO)
      */
     public AdpcmCompression(int totalChannels) {
-        if (totalChannels > MAX_CHANNELS) {
+        this(totalChannels, DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Creates a new Adpcm compression
+     *
+     * @param totalChannels    What totalChannels to use (1 = MONO, 2 = STEREO)
+     * @param compressionLevel Compression level from 2 to 7; higher keeps
+     *                         more bits of each sample
+     */
+    public AdpcmCompression(int totalChannels, int compressionLevel) {
+        if (totalChannels < 1 || totalChannels > MAX_CHANNELS) {
             throw new IllegalArgumentException("Invalid totalChannels: " + totalChannels);
         }
+        if (compressionLevel < MIN_COMPRESSION_LEVEL || compressionLevel > MAX_COMPRESSION_LEVEL) {
+            throw new IllegalArgumentException("Invalid compressionLevel: " + compressionLevel);
+        }
         this.totalChannels = totalChannels;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getTotalChannels() {
+        return totalChannels;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
     }
 
     /**
@@ -61,142 +100,242 @@ public final class AdpcmCompression implements IGenericCompression {
      */
     @Override
     public byte[] apply(byte[] src) {
-        // we don't care about this...
-        return null;
+        return apply(src, 0, src.length);
     }
 
     /**
-     * Reverses this compression type.
+     * Encodes part of an array of 16 bit samples.
+     * A trailing odd byte isn't part of a sample and is dropped.
      *
-     * @param src  Source (compressed) data
-     * @param dest Array to write compressed data into
-     *             Depending on what compression type this is,
-     *             the array may need to be instantiated to the
-     *             size of the uncompressed data!
-     * @return Uncompressed data
+     * @param src    Array holding the uncompressed samples
+     * @param offset Start of the samples
+     * @param length Length of the samples in bytes
+     * @return Compressed data
      */
-    @Override
-    public byte[] undo(byte[] src, byte[] dest) {
-        try {
-            BinaryReader reader = new BinaryReader(src);
-            ByteBuffer outputBuffer = ByteBuffer.allocate(dest.length);
-
-            // Shift right by 8 bits (divides by 256)
-            // This will later be used to calculate the new step
-            // from our current step - this is the second input
-            // to the shift right logical, i.e. division by 2^stepShift
-            short stepShift = (short) (reader.readShort() >>> 8);
-
-            // Each totalChannels the user wants is initialized
-            // The step gets set to 0x2C (initial value) in the constructor
-            List<AdpcmChannel> channels = new ArrayList<>();
-            for (int i = 0; i < totalChannels; i++) {
-                channels.add(new AdpcmChannel());
+    public byte[] apply(byte[] src, int offset, int length) {
+        int bitShift = compressionLevel - 1;
+        int maxBitMask = Math.min(1 << (bitShift - 1), 0x20);
+        int in = offset;
+        int inEnd = offset + (length & ~1);
+
+        // Markers are rare, so a byte per sample and a little more usually fits
+        byte[] out = new byte[2 + length + length / 8 + 16];
+        int pos = 0;
+
+        // The first byte is always zero, the second holds the bit shift
+        out[pos++] = 0;
+        out[pos++] = (byte) bitShift;
+
+        int sample = 0;
+        int stepIndex = INITIAL_STEP_INDEX;
+        int otherSample = 0;
+        int otherStepIndex = INITIAL_STEP_INDEX;
+
+        // The first sample of every channel is stored as it is
+        for (int i = 0; i < totalChannels && in < inEnd; i++) {
+            otherSample = sample;
+            sample = readSample(src, in);
+            in += 2;
+            writeSample(out, pos, sample);
+            pos += 2;
+        }
+
+        while (in < inEnd) {
+            if (totalChannels == 2) {
+                int tmp = sample;
+                sample = otherSample;
+                otherSample = tmp;
+                tmp = stepIndex;
+                stepIndex = otherStepIndex;
+                otherStepIndex = tmp;
+            }
+            // At most one marker for every 8 step indexes, then the sample
+            if (pos + 12 > out.length) {
+                out = Arrays.copyOf(out, out.length + out.length / 2 + 12);
             }
 
-            // Initialize the state from the input and provide it back
-            // to the output
-            for (AdpcmChannel chan : channels) {
-                // Cast since it returns unsigned 2 byte short as an int
-                chan.setState((short) reader.readShort());
-                outputBuffer.putShort(chan.getState());
+            int input = readSample(src, in);
+            in += 2;
+            int encoded = 0;
+            int absDifference = input - sample;
+            if (absDifference < 0) {
+                absDifference = -absDifference;
+                encoded |= SIGN_FLAG;
             }
 
-            int channelIndex = 0;
-            for (int i = 0; i < src.length; i++) {
-                byte current = src[i];
-                AdpcmChannel currentchannel = channels.get(channelIndex);
-
-                // Separate the sign and magnitude
-                int sign = current & SIGN_FLAG;
-                int magnitude = current & MAGNITUDE_FLAG;
-
-                // The sign tells us what operation we should perform.
-                if (sign != 0) {
-                    if (magnitude == WRITE_CURRENT_VALUE_MAGNITUDE) {
-                        if (currentchannel.getStep() != 0) {
-                            currentchannel.setStep((short) -1);
-                        }
-                        // Write current
-                        outputBuffer.putShort(currentchannel.getState());
-                        channelIndex = advanceChannel(channelIndex);
-                    } else if (magnitude == ADVANCE_PERIOD_MAGNITUDE) {
-                        advanceStepForward(currentchannel, 8);
-                    } else if (magnitude == ADVANCE_CHANNEL_MAGNITUDE) {
-                        channelIndex = advanceChannel(channelIndex);
-                    } else {
-                        advanceStepBackwards(currentchannel, 8);
-                    }
-                } else {
-                    int direction = current & DIRECTION_FLAG;
-                    int stepChange = current & STEP_CHANGE_FLAG;
-
-                    short initialStep = STEP_SIZE[currentchannel.getStep()];
-                    short adjustedStep = (short) (initialStep >>> stepShift);
-                    for (int j = 0; j < 6; j++) {
-                        if ((current & 1 << j) != 0) { // Purpose unknown
-                            currentchannel.setStep((short) (currentchannel.getStep() >> j));
-                        }
-                    }
-                    int newValue = calculateNewValue(currentchannel, direction, adjustedStep);
-                    // Clamp value, don't overflow.
-                    currentchannel.setState(clampValue(newValue));
-                    outputBuffer.putShort(currentchannel.getState());
-                    advanceStep(currentchannel, INDEX_ADJUST[stepChange]);
-                    channelIndex = advanceChannel(channelIndex);
+            int stepSize = STEP_SIZE[stepIndex];
+            if (absDifference < (stepSize >> compressionLevel)) {
+                // Too close to tell apart; repeat the last sample
+                if (stepIndex != 0) {
+                    stepIndex--;
                 }
+                out[pos++] = (byte) REPEAT_SAMPLE;
+                continue;
             }
 
-            return outputBuffer.array();
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
+            // Too far to reach; make the steps bigger first
+            while (absDifference > (stepSize << 1) && stepIndex < MAX_STEP_INDEX) {
+                stepIndex = Math.min(stepIndex + 8, MAX_STEP_INDEX);
+                stepSize = STEP_SIZE[stepIndex];
+                out[pos++] = (byte) INCREASE_STEP_INDEX;
+            }
+
+            int difference = stepSize >> bitShift;
+            int totalStepSize = 0;
+            for (int bit = 1; bit <= maxBitMask; bit <<= 1) {
+                if (totalStepSize + stepSize <= absDifference) {
+                    totalStepSize += stepSize;
+                    encoded |= bit;
+                }
+                stepSize >>= 1;
+            }
+            sample = nextSample(sample, encoded, difference + totalStepSize);
+            out[pos++] = (byte) encoded;
+            stepIndex = nextStepIndex(stepIndex, encoded);
         }
+        return Arrays.copyOf(out, pos);
     }
 
-    private int calculateNewValue(AdpcmChannel currentchannel, int direction, short adjustedStep) {
-        int finalValue = currentchannel.getState();
-        if (direction == 0) {
-            finalValue -= adjustedStep;
-        } else {
-            finalValue += adjustedStep;
-        }
-        return finalValue;
+    /**
+     * Reverses this compression type.
+     *
+     * @param src  Source (compressed) data
+     * @param dest Array of the size of the uncompressed data
+     * @return Filled destination array
+     */
+    @Override
+    public byte[] undo(byte[] src, byte[] dest) {
+        undo(src, 0, src.length, dest, 0, dest.length);
+        return dest;
+    }
+
+    /**
+     * Decodes part of src into dest, reading the compressed bytes in place.
+     *
+     * @param src    Source array holding the compressed data
+     * @param offset Start of the compressed data
+     * @param length Length of the compressed data
+     * @param dest   Array of the size of the uncompressed data
+     * @return Filled destination array
+     */
+    @Override
+    public byte[] undo(byte[] src, int offset, int length, byte[] dest) {
+        undo(src, offset, length, dest, 0, dest.length);
+        return dest;
     }
 
-    private short clampValue(int finalValue) {
-        if (finalValue > Short.MAX_VALUE) {
-            finalValue = Short.MAX_VALUE;
-        } else if (finalValue < Short.MIN_VALUE) {
-            finalValue = Short.MIN_VALUE;
+    /**
+     * Decodes part of src straight into part of dest.
+     * Decoding stops at the end of either slice.
+     *
+     * @param src        Source array holding the compressed data
+     * @param offset     Start of the compressed data
+     * @param length     Length of the compressed data
+     * @param dest       Array to decode into
+     * @param destOffset Start of the output in dest
+     * @param destLength Room for the output in dest
+     * @return Number of bytes decoded
+     */
+    @Override
+    public int undo(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) {
+        int in = offset;
+        int inEnd = offset + length;
+        int out = destOffset;
+        int outEnd = destOffset + destLength;
+        if (length < 2) {
+            return 0;
+        }
+
+        // The first byte is always zero, the second holds the bit shift
+        int bitShift = src[in + 1] & 0xFF;
+        in += 2;
+
+        int sample = 0;
+        int stepIndex = INITIAL_STEP_INDEX;
+        int otherSample = 0;
+        int otherStepIndex = INITIAL_STEP_INDEX;
+
+        // The first sample of every channel is stored as it is
+        for (int i = 0; i < totalChannels; i++) {
+            if (in + 2 > inEnd || out + 2 > outEnd) {
+                return out - destOffset;
+            }
+            otherSample = sample;
+            sample = readSample(src, in);
+            in += 2;
+            writeSample(dest, out, sample);
+            out += 2;
+        }
+
+        // Step index markers apply to the next byte's channel too
+        boolean sameChannel = false;
+        while (in < inEnd) {
+            if (totalChannels == 2 && !sameChannel) {
+                int tmp = sample;
+                sample = otherSample;
+                otherSample = tmp;
+                tmp = stepIndex;
+                stepIndex = otherStepIndex;
+                otherStepIndex = tmp;
+            }
+            sameChannel = false;
+
+            int encoded = src[in++] & 0xFF;
+            if ((encoded & MARKER_FLAG) != 0) {
+                if (encoded == REPEAT_SAMPLE) {
+                    if (stepIndex != 0) {
+                        stepIndex--;
+                    }
+                    if (out + 2 > outEnd) {
+                        break;
+                    }
+                    writeSample(dest, out, sample);
+                    out += 2;
+                } else if (encoded == INCREASE_STEP_INDEX) {
+                    stepIndex = Math.min(stepIndex + 8, MAX_STEP_INDEX);
+                    sameChannel = true;
+                } else if (encoded != SKIP) {
+                    stepIndex = Math.max(stepIndex - 8, 0);
+                    sameChannel = true;
+                }
+            } else {
+                if (out + 2 > outEnd) {
+                    break;
+                }
+                int stepSize = STEP_SIZE[stepIndex];
+                int difference = stepSize >> bitShift;
+                for (int bit = 0; bit < 6; bit++) {
+                    if ((encoded & (1 << bit)) != 0) {
+                        difference += stepSize >> bit;
+                    }
+                }
+                sample = nextSample(sample, encoded, difference);
+                writeSample(dest, out, sample);
+                out += 2;
+                stepIndex = nextStepIndex(stepIndex, encoded);
+            }
         }
-        return (short) finalValue;
+        return out - destOffset;
     }
 
-    private int advanceChannel(int currentChannelIndex) {
-        return (currentChannelIndex + 1) % totalChannels; // Keep the current channel in bounds
+    private static int readSample(byte[] src, int pos) {
+        return (short) ((src[pos] & 0xFF) | (src[pos + 1] << 8));
     }
 
-    private void advanceStepForward(AdpcmChannel channel, int amount) {
-        channel.setStep((short) (channel.getStep() + amount));
-        // If we reach or pass the final step size, we will stay at the final one.
-        if (channel.getStep() > STEP_SIZE.length) {
-            channel.setStep((short) (STEP_SIZE.length - 1));
-        }
+    private static void writeSample(byte[] dest, int pos, int sample) {
+        dest[pos] = (byte) sample;
+        dest[pos + 1] = (byte) (sample >> 8);
     }
 
-    private void advanceStepBackwards(AdpcmChannel channel, int amount) {
-        channel.setStep((short) (channel.getStep() - amount));
-        // If we go below zero, go back to the first step
-        if (channel.getStep() < 0) {
-            channel.setStep((short) 0);
+    private static int nextSample(int sample, int encoded, int difference) {
+        // Clamp value, don't overflow.
+        if ((encoded & SIGN_FLAG) != 0) {
+            return Math.max(sample - difference, Short.MIN_VALUE);
         }
+        return Math.min(sample + difference, Short.MAX_VALUE);
     }
 
-    private void advanceStep(AdpcmChannel channel, int amount) {
-        if (amount > 0) {
-            advanceStepForward(channel, amount);
-        } else if (amount < 0) {
-            advanceStepBackwards(channel, -1 * amount);
-        }
+    private static int nextStepIndex(int stepIndex, int encoded) {
+        return Math.max(0, Math.min(stepIndex + NEXT_STEP_INDEX[encoded & 0x1F], STEP_SIZE.length - 1));
     }
 }
@@ -0,0 +1,60 @@
+package compression;
+
+import interfaces.IGenericDecompression;
+
+/**
+ * Represents the BZip2 compression type.
+ * Only decompression is supported; CompressionHandler reports
+ * BZip2 compression as not implemented.
+ * <p>
+ * Each thread keeps one decoder, so the large block tables are
+ * allocated once and reused for every sector.
+ */
+public final class BZip2Compression implements IGenericDecompression {
+
+    private static final ThreadLocal<BZip2Decoder> DECODERS = ThreadLocal.withInitial(BZip2Decoder::new);
+
+    /**
+     * Reverses this compression type.
+     *
+     * @param src  Source (compressed) data
+     * @param dest Array of the size of the uncompressed data
+     * @return Filled destination array
+     */
+    @Override
+    public byte[] undo(byte[] src, byte[] dest) {
+        undo(src, 0, src.length, dest, 0, dest.length);
+        return dest;
+    }
+
+    /**
+     * Decompresses part of src into dest, reading the compressed bytes in place.
+     *
+     * @param src    Source array holding the compressed data
+     * @param offset Start of the compressed data
+     * @param length Length of the compressed data
+     * @param dest   Array of the size of the uncompressed data
+     * @return Filled destination array
+     */
+    @Override
+    public byte[] undo(byte[] src, int offset, int length, byte[] dest) {
+        undo(src, offset, length, dest, 0, dest.length);
+        return dest;
+    }
+
+    /**
+     * Decompresses part of src straight into part of dest.
+     *
+     * @param src        Source array holding the compressed data
+     * @param offset     Start of the compressed data
+     * @param length     Length of the compressed data
+     * @param dest       Array to decompress into
+     * @param destOffset Start of the output in dest
+     * @param destLength Size of the uncompressed data
+     * @return Number of bytes decompressed
+     */
+    @Override
+    public int undo(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) {
+        return DECODERS.get().decode(src, offset, length, dest, destOffset, destLength);
+    }
+}
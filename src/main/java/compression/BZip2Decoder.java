@@ -0,0 +1,396 @@
+package compression;
+
+import java.util.Arrays;
+
+/**
+ * Decoder of bzip2 streams.
+ * <p>
+ * Blocks are decoded one at a time straight into the caller's array.
+ * The block array (tt), selectors and code tables belong to the decoder
+ * and are reused for every stream it decodes; tt only grows when a
+ * block is larger than any seen before.
+ */
+final class BZip2Decoder {
+
+    private static final int BLOCK_MAGIC_HI = 0x314159;
+    private static final int BLOCK_MAGIC_LO = 0x265359;
+    private static final int END_MAGIC_HI = 0x177245;
+    private static final int END_MAGIC_LO = 0x385090;
+
+    private static final int RUN_A = 0;
+    private static final int RUN_B = 1;
+    private static final int MAX_GROUPS = 6;
+    private static final int GROUP_SIZE = 50;
+    private static final int MAX_ALPHA_SIZE = 258;
+    private static final int MAX_CODE_LEN = 20;
+    private static final int MAX_SELECTORS = 2 + 900000 / GROUP_SIZE;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    /* Reused between blocks and streams */
+    private int[] tt = new int[0];
+    private final byte[] selectors = new byte[MAX_SELECTORS];
+    private final byte[][] lengths = new byte[MAX_GROUPS][MAX_ALPHA_SIZE];
+    private final int[][] limit = new int[MAX_GROUPS][MAX_CODE_LEN + 2];
+    private final int[][] base = new int[MAX_GROUPS][MAX_CODE_LEN + 2];
+    private final int[][] perm = new int[MAX_GROUPS][MAX_ALPHA_SIZE];
+    private final int[] minLens = new int[MAX_GROUPS];
+    private final byte[] seqToUnseq = new byte[256];
+    private final byte[] mtf = new byte[256];
+    private final int[] unzftab = new int[256];
+    private final int[] cftab = new int[257];
+
+    /* CRC of the block last decoded */
+    private int crc;
+
+    /* Input bits, most significant first */
+    private byte[] in;
+    private int inPos;
+    private int inEnd;
+    private long bitBuffer;
+    private int bitCount;
+
+    /**
+     * Decodes a bzip2 stream into part of dest.
+     * Decoding stops at the end of the stream or when dest is full.
+     *
+     * @param src        Source array holding the stream
+     * @param offset     Start of the stream
+     * @param length     Length of the stream
+     * @param dest       Array to write into
+     * @param destOffset Start of the output in dest
+     * @param destLength Room for output in dest
+     * @return Number of bytes written
+     */
+    int decode(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) {
+        in = src;
+        inPos = offset;
+        inEnd = offset + length;
+        bitBuffer = 0;
+        bitCount = 0;
+        try {
+            if (bits(8) != 'B' || bits(8) != 'Z' || bits(8) != 'h') {
+                throw new IllegalArgumentException("BZip2: Bad stream header");
+            }
+            int level = bits(8) - '0';
+            if (level < 1 || level > 9) {
+                throw new IllegalArgumentException("BZip2: Bad block size " + level);
+            }
+            int maxBlockSize = level * 100000;
+
+            int out = destOffset;
+            int end = destOffset + destLength;
+            int streamCrc = 0;
+            while (out < end) {
+                int magicHi = bits(24);
+                int magicLo = bits(24);
+                if (magicHi == END_MAGIC_HI && magicLo == END_MAGIC_LO) {
+                    if (bits(32) != streamCrc) {
+                        throw new IllegalArgumentException("BZip2: Stream CRC mismatch");
+                    }
+                    break;
+                }
+                if (magicHi != BLOCK_MAGIC_HI || magicLo != BLOCK_MAGIC_LO) {
+                    throw new IllegalArgumentException("BZip2: Bad block header");
+                }
+                int blockCrc = bits(32);
+                int written = decodeBlock(maxBlockSize, dest, out, end);
+                if (written < 0) {
+                    // The block filled dest before it ended.
+                    out = end;
+                    break;
+                }
+                out += written;
+                if (crc != blockCrc) {
+                    throw new IllegalArgumentException("BZip2: Block CRC mismatch");
+                }
+                streamCrc = ((streamCrc << 1) | (streamCrc >>> 31)) ^ blockCrc;
+            }
+            return out - destOffset;
+        } finally {
+            in = null;
+        }
+    }
+
+    /**
+     * Decodes one block after its header.
+     *
+     * @return Bytes written, or -1 if dest was filled first
+     */
+    private int decodeBlock(int maxBlockSize, byte[] dest, int out, int end) {
+        if (bits(1) != 0) {
+            throw new IllegalArgumentException("BZip2: Randomised blocks are not supported");
+        }
+        int origPtr = bits(24);
+
+        // Byte values used in the block
+        int inUse = 0;
+        int inUse16 = bits(16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int used = bits(16);
+                for (int j = 0; j < 16; j++) {
+                    if ((used & (0x8000 >>> j)) != 0) {
+                        seqToUnseq[inUse++] = (byte) (i * 16 + j);
+                    }
+                }
+            }
+        }
+        if (inUse == 0) {
+            throw new IllegalArgumentException("BZip2: Block uses no bytes");
+        }
+        int alphaSize = inUse + 2;
+
+        // Which code table each group of 50 symbols uses, move-to-front coded
+        int groups = bits(3);
+        int selectorCount = bits(15);
+        if (groups < 2 || groups > MAX_GROUPS || selectorCount < 1) {
+            throw new IllegalArgumentException("BZip2: Bad code tables");
+        }
+        byte[] groupOrder = {0, 1, 2, 3, 4, 5};
+        for (int i = 0; i < selectorCount; i++) {
+            int j = 0;
+            while (bits(1) != 0) {
+                if (++j >= groups) {
+                    throw new IllegalArgumentException("BZip2: Bad selector");
+                }
+            }
+            byte group = groupOrder[j];
+            System.arraycopy(groupOrder, 0, groupOrder, 1, j);
+            groupOrder[0] = group;
+            if (i < MAX_SELECTORS) {
+                selectors[i] = group;
+            }
+        }
+        selectorCount = Math.min(selectorCount, MAX_SELECTORS);
+
+        // Code lengths, delta coded
+        for (int t = 0; t < groups; t++) {
+            int length = bits(5);
+            for (int i = 0; i < alphaSize; i++) {
+                while (true) {
+                    if (length < 1 || length > MAX_CODE_LEN) {
+                        throw new IllegalArgumentException("BZip2: Bad code length");
+                    }
+                    if (bits(1) == 0) {
+                        break;
+                    }
+                    length += bits(1) == 0 ? 1 : -1;
+                }
+                lengths[t][i] = (byte) length;
+            }
+            createDecodeTables(t, alphaSize);
+        }
+
+        int blockSize = decodeSymbols(alphaSize, selectorCount, maxBlockSize);
+        if (origPtr >= blockSize) {
+            throw new IllegalArgumentException("BZip2: Bad origin pointer");
+        }
+
+        // Undo the Burrows-Wheeler transform: link each byte to the one after it.
+        cftab[0] = 0;
+        for (int i = 0; i < 256; i++) {
+            cftab[i + 1] = cftab[i] + unzftab[i];
+        }
+        int[] tt = this.tt;
+        for (int i = 0; i < blockSize; i++) {
+            int uc = tt[i] & 0xFF;
+            tt[cftab[uc]++] |= i << 8;
+        }
+
+        // Follow the links, expanding runs of 4 equal bytes and their count byte.
+        int crc = 0xFFFFFFFF;
+        int start = out;
+        int tPos = tt[origPtr] >>> 8;
+        int last = -1;
+        int run = 0;
+        for (int k = 0; k < blockSize; k++) {
+            tPos = tt[tPos];
+            int ch = tPos & 0xFF;
+            tPos >>>= 8;
+            if (run == 4) {
+                for (int r = 0; r < ch; r++) {
+                    if (out >= end) {
+                        return -1;
+                    }
+                    dest[out++] = (byte) last;
+                    crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ last) & 0xFF];
+                }
+                run = 0;
+                continue;
+            }
+            if (ch != last) {
+                last = ch;
+                run = 1;
+            } else {
+                run++;
+            }
+            if (out >= end) {
+                return -1;
+            }
+            dest[out++] = (byte) ch;
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ ch) & 0xFF];
+        }
+        this.crc = ~crc;
+        return out - start;
+    }
+
+    /**
+     * Decodes the Huffman coded symbols of a block, undoing the zero run
+     * and move-to-front coding, into tt.
+     *
+     * @return Number of bytes in the block
+     */
+    private int decodeSymbols(int alphaSize, int selectorCount, int maxBlockSize) {
+        int endOfBlock = alphaSize - 1;
+        for (int i = 0; i < 256; i++) {
+            mtf[i] = (byte) i;
+        }
+        Arrays.fill(unzftab, 0);
+
+        int blockSize = 0;
+        int groupIndex = -1;
+        int groupLeft = 0;
+        int table = 0;
+        int runLength = 0;
+        int runWeight = 1;
+        while (true) {
+            if (groupLeft == 0) {
+                if (++groupIndex >= selectorCount) {
+                    throw new IllegalArgumentException("BZip2: Ran out of selectors");
+                }
+                groupLeft = GROUP_SIZE;
+                table = selectors[groupIndex];
+            }
+            groupLeft--;
+            int symbol = decodeSymbol(table);
+
+            if (symbol == RUN_A || symbol == RUN_B) {
+                // Runs of the front byte are written in bijective base 2.
+                runLength += (symbol + 1) * runWeight;
+                runWeight <<= 1;
+                if (runLength > maxBlockSize) {
+                    throw new IllegalArgumentException("BZip2: Run too long");
+                }
+                continue;
+            }
+            if (runLength > 0) {
+                blockSize = fill(blockSize, runLength, maxBlockSize);
+                runLength = 0;
+                runWeight = 1;
+            }
+            if (symbol == endOfBlock) {
+                return blockSize;
+            }
+
+            int index = symbol - 1;
+            byte value = mtf[index];
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = value;
+            int uc = seqToUnseq[value & 0xFF] & 0xFF;
+            unzftab[uc]++;
+            ensureCapacity(blockSize + 1, maxBlockSize);
+            tt[blockSize++] = uc;
+        }
+    }
+
+    private int fill(int blockSize, int runLength, int maxBlockSize) {
+        int uc = seqToUnseq[mtf[0] & 0xFF] & 0xFF;
+        unzftab[uc] += runLength;
+        ensureCapacity(blockSize + runLength, maxBlockSize);
+        Arrays.fill(tt, blockSize, blockSize + runLength, uc);
+        return blockSize + runLength;
+    }
+
+    private void ensureCapacity(int size, int maxBlockSize) {
+        if (size > maxBlockSize) {
+            throw new IllegalArgumentException("BZip2: Block too large");
+        }
+        if (size > tt.length) {
+            tt = Arrays.copyOf(tt, Math.min(maxBlockSize, Math.max(size, tt.length * 2)));
+        }
+    }
+
+    private int decodeSymbol(int table) {
+        int[] tableLimit = limit[table];
+        int length = minLens[table];
+        int code = bits(length);
+        while (code > tableLimit[length]) {
+            if (++length > MAX_CODE_LEN) {
+                throw new IllegalArgumentException("BZip2: Bad code");
+            }
+            code = (code << 1) | bits(1);
+        }
+        int index = code - base[table][length];
+        if (index < 0 || index >= MAX_ALPHA_SIZE) {
+            throw new IllegalArgumentException("BZip2: Bad code");
+        }
+        return perm[table][index];
+    }
+
+    /**
+     * Builds canonical Huffman decoding tables from code lengths.
+     */
+    private void createDecodeTables(int table, int alphaSize) {
+        byte[] length = lengths[table];
+        int[] tableLimit = limit[table];
+        int[] tableBase = base[table];
+        int[] tablePerm = perm[table];
+        int minLen = MAX_CODE_LEN;
+        int maxLen = 0;
+        for (int i = 0; i < alphaSize; i++) {
+            minLen = Math.min(minLen, length[i]);
+            maxLen = Math.max(maxLen, length[i]);
+        }
+
+        int pp = 0;
+        for (int i = minLen; i <= maxLen; i++) {
+            for (int j = 0; j < alphaSize; j++) {
+                if (length[j] == i) {
+                    tablePerm[pp++] = j;
+                }
+            }
+        }
+        Arrays.fill(tableBase, 0);
+        for (int i = 0; i < alphaSize; i++) {
+            tableBase[length[i] + 1]++;
+        }
+        for (int i = 1; i < tableBase.length; i++) {
+            tableBase[i] += tableBase[i - 1];
+        }
+        // Nothing matches past the longest code, so bad input runs into MAX_CODE_LEN.
+        Arrays.fill(tableLimit, 0);
+        int vec = 0;
+        for (int i = minLen; i <= maxLen; i++) {
+            vec += tableBase[i + 1] - tableBase[i];
+            tableLimit[i] = vec - 1;
+            vec <<= 1;
+        }
+        for (int i = minLen + 1; i <= maxLen; i++) {
+            tableBase[i] = ((tableLimit[i - 1] + 1) << 1) - tableBase[i];
+        }
+        minLens[table] = minLen;
+    }
+
+    private int bits(int count) {
+        while (bitCount < count) {
+            if (inPos >= inEnd) {
+                throw new IllegalArgumentException("BZip2: Incomplete input");
+            }
+            bitBuffer = (bitBuffer << 8) | (in[inPos++] & 0xFF);
+            bitCount += 8;
+        }
+        bitCount -= count;
+        return (int) ((bitBuffer >>> bitCount) & ((1L << count) - 1));
+    }
+}
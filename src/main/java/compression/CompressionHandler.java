@@ -1,7 +1,12 @@
 package compression;
 
 import interfaces.IGenericCompression;
+import interfaces.IGenericDecompression;
 import settings.MpqContext;
+import settings.MpqSettings;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
 
 /**
  * Handles compression types based off compression flags.
@@ -9,21 +14,38 @@ import settings.MpqContext;
 public final class CompressionHandler {
 
     /* Compression flag constants */
-    private static final byte IMAADPCM_STEREO = 0x40;
-    private static final byte IMAADPCM_MONO = -0x80;
+    private static final byte IMAADPCM_MONO = 0x40;
+    private static final byte IMAADPCM_STEREO = -0x80;
     private static final byte HUFFMAN = 0x01;
     private static final byte DEFLATED = 0x02;
     private static final byte IMPLODE = 0x08;
     private static final byte BZIP2 = 0x10;
 
-    private IGenericCompression deflationCompression;
-    private IGenericCompression stereoCompression;
-    private IGenericCompression monoCompression;
-    private IGenericCompression implodeCompression;
+    /**
+     * Two buffers per thread that the intermediate results of data
+     * compressed more than once alternate between.
+     * They grow to the largest size asked for, up to MAX_SCRATCH_SIZE.
+     * Larger data, like single unit files, gets buffers of its own.
+     */
+    private static final ThreadLocal<byte[][]> SCRATCH = ThreadLocal.withInitial(() -> new byte[2][0]);
+
+    /* Largest sector size in common use (512 << 7) */
+    private static final int MAX_SCRATCH_SIZE = 0x10000;
+
+    private DeflationCompression deflationCompression;
+    private DeflationCompression maxDeflationCompression;
+    private IGenericDecompression bzip2Compression;
+    private IGenericCompression huffmanCompression;
+    private AdpcmCompression stereoCompression;
+    private AdpcmCompression monoCompression;
+    private ImplodeCompression implodeCompression;
     private MpqContext context;
 
     public CompressionHandler(MpqContext context) {
         this.deflationCompression = new DeflationCompression();
+        this.maxDeflationCompression = new DeflationCompression(Deflater.BEST_COMPRESSION);
+        this.bzip2Compression = new BZip2Compression();
+        this.huffmanCompression = new HuffmanCompression();
         this.stereoCompression = new AdpcmCompression(2);
         this.monoCompression = new AdpcmCompression(1);
         this.implodeCompression = new ImplodeCompression();
@@ -34,60 +56,191 @@ public final class CompressionHandler {
      * Decompresses the data
      *
      * @param data             Data bytes
+     * @param offset           Start of the compressed data in data
+     * @param length           Length of the compressed data
      * @param whichCompression Which compression to undo
      * @param compressionName  Name of compression (for logging)
+     * @param dest             Array to write the decompressed data into
+     * @param destOffset       Start of the output in dest
      * @param desiredSize      Size of decompressed file
-     * @return Decompressed file data
+     * @return Number of bytes written to dest
      */
-    private byte[] applyGenericDecompress(byte[] data, IGenericCompression whichCompression,
-                                          String compressionName, int desiredSize) {
+    private int applyGenericDecompress(byte[] data, int offset, int length,
+                                       IGenericDecompression whichCompression,
+                                       String compressionName,
+                                       byte[] dest, int destOffset, int desiredSize) {
         context.getLogger().debug
                 ("Applying " + compressionName + " to origin data (src = " +
-                        data.length + " dest = " + desiredSize + ")");
-        byte[] tmp = new byte[desiredSize];
-        tmp = whichCompression.undo(data, tmp);
-        context.getLogger().debug(compressionName + " OK (size = " + tmp.length + ")");
-        return tmp;
+                        length + " dest = " + desiredSize + ")");
+        int written = whichCompression.undo(data, offset, length, dest, destOffset, desiredSize);
+        context.getLogger().debug(compressionName + " OK (size = " + written + ")");
+        return written;
     }
 
     public byte[] decompress(byte[] data, int compressionFlag, int desiredSize) {
-        boolean bzip2Compressed = (compressionFlag & BZIP2) != 0;
-        boolean implodedCompressed = (compressionFlag & IMPLODE) != 0;
-        boolean deflatedCompressed = (compressionFlag & DEFLATED) != 0;
-        boolean huffmanCompressed = (compressionFlag & HUFFMAN) != 0;
-        boolean stereoCompressed = (compressionFlag & IMAADPCM_STEREO) != 0;
-        boolean monoCompressed = (compressionFlag & IMAADPCM_MONO) != 0;
-
-        if (bzip2Compressed) {
-            context.getErrorHandler().
-                    handleCriticalError("Not yet written (Bzip)");
-        }
-        if (implodedCompressed) {
-            data = applyGenericDecompress(data, implodeCompression,
-                    "Implode", desiredSize);
-        }
-        if (deflatedCompressed) {
-            data = applyGenericDecompress(data, deflationCompression,
-                    "Inflate", desiredSize);
+        return decompress(data, 0, data.length, compressionFlag, desiredSize);
+    }
+
+    /**
+     * Decompresses part of an array.
+     * The first decompression step reads the slice in place, so
+     * callers don't need to copy the compressed bytes out first.
+     *
+     * @param data            Array holding the compressed data
+     * @param offset          Start of the compressed data
+     * @param length          Length of the compressed data
+     * @param compressionFlag Compression flags of the data
+     * @param desiredSize     Size of decompressed data
+     * @return Decompressed data
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int compressionFlag, int desiredSize) {
+        if (!isCompressed(compressionFlag)) {
+            // No known compression was applied; hand back the payload alone.
+            return Arrays.copyOfRange(data, offset, offset + length);
         }
-        if (huffmanCompressed) {
-            context.getErrorHandler().
-                    handleCriticalError("Not yet written (Huffman)");
+        byte[] dest = new byte[desiredSize];
+        decompress(data, offset, length, compressionFlag, dest, 0, desiredSize);
+        return dest;
+    }
+
+    /**
+     * Decompresses part of an array into part of another.
+     * Intermediate results of data compressed more than once go through
+     * the scratch buffers of the thread; the last step writes straight
+     * into dest.
+     *
+     * @param data            Array holding the compressed data
+     * @param offset          Start of the compressed data
+     * @param length          Length of the compressed data
+     * @param compressionFlag Compression flags of the data
+     * @param dest            Array to write the decompressed data into
+     * @param destOffset      Start of the output in dest
+     * @param desiredSize     Size of decompressed data
+     * @return Number of bytes written to dest
+     */
+    public int decompress(byte[] data, int offset, int length, int compressionFlag,
+                          byte[] dest, int destOffset, int desiredSize) {
+        // Steps are undone in the reverse of the order they were applied.
+        // Sounds are Huffman coded after ADPCM, so Huffman comes off first.
+        IGenericDecompression[] steps = {
+                (compressionFlag & BZIP2) != 0 ? bzip2Compression : null,
+                (compressionFlag & IMPLODE) != 0 ? implodeCompression : null,
+                (compressionFlag & DEFLATED) != 0 ? deflationCompression : null,
+                (compressionFlag & HUFFMAN) != 0 ? huffmanCompression : null,
+                (compressionFlag & IMAADPCM_STEREO) != 0 ? stereoCompression : null,
+                (compressionFlag & IMAADPCM_MONO) != 0 ? monoCompression : null
+        };
+        String[] names = {"BZip2", "Implode", "Inflate", "Huffman", "Stereo", "Mono"};
+        int last = steps.length - 1;
+        while (last >= 0 && steps[last] == null) {
+            last--;
         }
-        if (stereoCompressed) {
-            data = applyGenericDecompress(data, stereoCompression,
-                    "Stereo", desiredSize);
+        if (last < 0) {
+            int written = Math.min(length, desiredSize);
+            System.arraycopy(data, offset, dest, destOffset, written);
+            return written;
         }
-        if (monoCompressed) {
-            data = applyGenericDecompress(data, monoCompression,
-                    "Mono", desiredSize);
+        byte[][] scratch = desiredSize <= MAX_SCRATCH_SIZE ? SCRATCH.get() : new byte[2][0];
+        int next = 0;
+        for (int i = 0; i < last; i++) {
+            if (steps[i] != null) {
+                if (scratch[next].length < desiredSize) {
+                    scratch[next] = new byte[desiredSize];
+                }
+                byte[] tmp = scratch[next];
+                length = applyGenericDecompress(data, offset, length, steps[i], names[i],
+                        tmp, 0, desiredSize);
+                data = tmp;
+                offset = 0;
+                next ^= 1;
+            }
         }
+        return applyGenericDecompress(data, offset, length, steps[last], names[last],
+                dest, destOffset, desiredSize);
+    }
 
-        return data;
+    /**
+     * Determines if the flags name any compression that can be undone.
+     *
+     * @param compressionFlag Compression flags
+     * @return True if at least one supported compression is set
+     */
+    private static boolean isCompressed(int compressionFlag) {
+        return (compressionFlag & (BZIP2 | IMPLODE | DEFLATED | HUFFMAN | IMAADPCM_STEREO | IMAADPCM_MONO)) != 0;
     }
 
+    /**
+     * Compresses the data, at the level chosen by the compression settings.
+     * Deflate, implode and ADPCM are supported.
+     *
+     * @param data            Data bytes
+     * @param compressionFlag Compression to apply
+     * @return Compression flag byte followed by the compressed data
+     */
     public byte[] compress(byte[] data, int compressionFlag) {
-        context.getErrorHandler().handleCriticalError("Not implemented (compress)");
-        return null;
+        return compress(data, 0, data.length, compressionFlag);
+    }
+
+    /**
+     * Compresses part of an array, at the level chosen by the compression settings.
+     * Deflate and implode are supported; implode has no levels, but is
+     * still needed to write sectors older clients can read.
+     * Sounds can be ADPCM compressed. Huffman coding them after that
+     * needs the sound weight tables other tools use, which HuffmanTree
+     * lacks, so it is not implemented.
+     *
+     * @param data            Array holding the data
+     * @param offset          Start of the data
+     * @param length          Length of the data
+     * @param compressionFlag Compression to apply
+     * @return Compression flag byte followed by the compressed data
+     */
+    public byte[] compress(byte[] data, int offset, int length, int compressionFlag) {
+        byte[] compressed;
+        if (compressionFlag == DEFLATED) {
+            DeflationCompression compression =
+                    context.getSettings().getCompressionSettings() == MpqSettings.CompressionSettings.MAX
+                            ? maxDeflationCompression : deflationCompression;
+            compressed = compression.apply(data, offset, length);
+        } else if (compressionFlag == IMPLODE) {
+            compressed = implodeCompression.apply(data, offset, length);
+        } else if (isAdpcm(compressionFlag)) {
+            AdpcmCompression compression =
+                    (compressionFlag & IMAADPCM_STEREO) != 0 ? stereoCompression : monoCompression;
+            compressed = compression.apply(data, offset, length);
+        } else {
+            context.getErrorHandler().handleCriticalError("Not implemented (compress "
+                    + compressionFlag + ")");
+            return null;
+        }
+        byte[] sector = new byte[compressed.length + 1];
+        sector[0] = (byte) compressionFlag;
+        System.arraycopy(compressed, 0, sector, 1, compressed.length);
+        return sector;
+    }
+
+    private boolean isAdpcm(int compressionFlag) {
+        int flag = compressionFlag & 0xFF;
+        return flag == (IMAADPCM_MONO & 0xFF) || flag == (IMAADPCM_STEREO & 0xFF);
+    }
+
+    /**
+     * Prepares one sector of a file to be stored in the archive.
+     * A sector is only stored compressed if that makes it smaller;
+     * readers tell the two apart by comparing its size to the sector size.
+     *
+     * @param data   Array holding the file
+     * @param offset Start of the sector
+     * @param length Length of the sector
+     * @return Sector bytes as stored: compressed, or a copy of the raw data
+     */
+    public byte[] compressSector(byte[] data, int offset, int length) {
+        if (context.getSettings().getCompressionSettings() != MpqSettings.CompressionSettings.NONE) {
+            byte[] compressed = compress(data, offset, length, DEFLATED);
+            if (compressed != null && compressed.length < length) {
+                return compressed;
+            }
+        }
+        return Arrays.copyOfRange(data, offset, offset + length);
     }
 }
@@ -1,42 +1,103 @@
 package compression;
 
-import com.jcraft.jzlib.Deflater;
-import com.jcraft.jzlib.Inflater;
 import interfaces.IGenericCompression;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
 /**
  * Represents a Deflation or Inflation compression type.
  * Can perform both operations.
  */
 public final class DeflationCompression implements IGenericCompression {
 
-    private Inflater inflater;
-    private Deflater deflater;
+    /* One inflater per thread, reset between sectors instead of rebuilt. */
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    /* One deflater per thread and level, reset between sectors. */
+    private final ThreadLocal<Deflater> deflaters;
+    private final int level;
 
     /**
      * Initializes the compression type
      */
     public DeflationCompression() {
-        this.inflater = new Inflater();
-        this.deflater = new Deflater();
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Initializes the compression type with a compression level.
+     *
+     * @param level Deflate level, 0-9 or Deflater.DEFAULT_COMPRESSION
+     */
+    public DeflationCompression(int level) {
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
     }
 
     /**
      * Inflates src into dest.
+     * Each thread uses its own Inflater, so sectors can be inflated
+     * from several threads at once.
      *
      * @param src  Source bytes (compressed)
      * @param dest Byte array of the size of the uncompressed data
      * @return Filled destination array. You can also simply use dest after running method.
      */
     public byte[] undo(byte[] src, byte[] dest) {
-        inflater.init();
-        inflater.setInput(src);
-        inflater.setOutput(dest);
-        inflater.inflate(0);
-        inflater.end();
+        return undo(src, 0, src.length, dest);
+    }
+
+    /**
+     * Inflates part of src into dest, reading the compressed bytes in place.
+     *
+     * @param src    Source array holding the compressed bytes
+     * @param offset Start of the compressed bytes
+     * @param length Length of the compressed bytes
+     * @param dest   Byte array of the size of the uncompressed data
+     * @return Filled destination array.
+     */
+    @Override
+    public byte[] undo(byte[] src, int offset, int length, byte[] dest) {
+        undo(src, offset, length, dest, 0, dest.length);
         return dest;
     }
 
+    /**
+     * Inflates part of src straight into part of dest.
+     *
+     * @param src        Source array holding the compressed bytes
+     * @param offset     Start of the compressed bytes
+     * @param length     Length of the compressed bytes
+     * @param dest       Array to inflate into
+     * @param destOffset Start of the output in dest
+     * @param destLength Size of the uncompressed data
+     * @return Number of bytes inflated
+     * @throws IllegalArgumentException If the compressed bytes are corrupt
+     */
+    @Override
+    public int undo(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(src, offset, length);
+        int written = 0;
+        try {
+            while (written < destLength && !inflater.finished()) {
+                int inflated = inflater.inflate(dest, destOffset + written, destLength - written);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                written += inflated;
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Deflate: " + ex.getMessage(), ex);
+        }
+        return written;
+    }
+
     /**
      * Applies this compression type.
      *
@@ -45,6 +106,44 @@ public final class DeflationCompression implements IGenericCompression {
      */
     @Override
     public byte[] apply(byte[] src) {
-        throw new UnsupportedOperationException("Not yet written..");
+        return apply(src, 0, src.length);
+    }
+
+    /**
+     * Deflates part of an array into a zlib stream.
+     *
+     * @param src    Source array holding the uncompressed data
+     * @param offset Start of the data
+     * @param length Length of the data
+     * @return Compressed data
+     */
+    public byte[] apply(byte[] src, int offset, int length) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(src, offset, length);
+        deflater.finish();
+        // Sectors that don't shrink are stored raw, so this is usually big enough.
+        byte[] buffer = new byte[length + 64];
+        ByteArrayOutputStream overflow = null;
+        int written = 0;
+        while (!deflater.finished()) {
+            if (written == buffer.length) {
+                if (overflow == null) {
+                    overflow = new ByteArrayOutputStream(buffer.length * 2);
+                }
+                overflow.write(buffer, 0, written);
+                written = 0;
+            }
+            written += deflater.deflate(buffer, written, buffer.length - written);
+        }
+        if (overflow == null) {
+            return Arrays.copyOf(buffer, written);
+        }
+        overflow.write(buffer, 0, written);
+        return overflow.toByteArray();
+    }
+
+    public int getLevel() {
+        return level;
     }
 }
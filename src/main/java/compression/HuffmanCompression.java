@@ -0,0 +1,87 @@
+package compression;
+
+import interfaces.IGenericCompression;
+
+/**
+ * Represents the MPQ adaptive Huffman compression type.
+ * Archives use it on top of IMA ADPCM for sound files.
+ * <p>
+ * Every call builds its tree from scratch, so one tree is kept per
+ * thread and reused.
+ */
+public final class HuffmanCompression implements IGenericCompression {
+
+    /* Compression type of generic data */
+    public static final int GENERIC_TYPE = 0;
+
+    private static final ThreadLocal<HuffmanTree> TREES = ThreadLocal.withInitial(HuffmanTree::new);
+
+    /**
+     * Applies this compression type with the weights for generic data.
+     *
+     * @param src Source (uncompressed) data
+     * @return Compressed data
+     */
+    @Override
+    public byte[] apply(byte[] src) {
+        return apply(src, GENERIC_TYPE);
+    }
+
+    /**
+     * Applies this compression type.
+     *
+     * @param src             Source (uncompressed) data
+     * @param compressionType Weight table to start from
+     * @return Compressed data
+     */
+    public byte[] apply(byte[] src, int compressionType) {
+        return TREES.get().encode(src, 0, src.length, compressionType);
+    }
+
+    /**
+     * Reverses this compression type.
+     *
+     * @param src  Source (compressed) data
+     * @param dest Array of the size of the uncompressed data
+     * @return Filled destination array
+     */
+    @Override
+    public byte[] undo(byte[] src, byte[] dest) {
+        undo(src, 0, src.length, dest, 0, dest.length);
+        return dest;
+    }
+
+    /**
+     * Decodes part of src into dest, reading the compressed bytes in place.
+     *
+     * @param src    Source array holding the compressed data
+     * @param offset Start of the compressed data
+     * @param length Length of the compressed data
+     * @param dest   Array of the size of the uncompressed data
+     * @return Filled destination array
+     */
+    @Override
+    public byte[] undo(byte[] src, int offset, int length, byte[] dest) {
+        undo(src, offset, length, dest, 0, dest.length);
+        return dest;
+    }
+
+    /**
+     * Decodes part of src straight into part of dest.
+     * The compressed data ends with its own marker, so fewer bytes than
+     * destLength are written when the data is shorter, as it is when
+     * ADPCM data is decoded before being expanded.
+     *
+     * @param src        Source array holding the compressed data
+     * @param offset     Start of the compressed data
+     * @param length     Length of the compressed data
+     * @param dest       Array to decode into
+     * @param destOffset Start of the output in dest
+     * @param destLength Room for the output in dest
+     * @return Number of bytes decoded
+     */
+    @Override
+    public int undo(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) {
+        return TREES.get().decode(src, offset, length, dest, destOffset, destLength);
+    }
+}
@@ -0,0 +1,483 @@
+package compression;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive Huffman tree of the MPQ Huffman compression.
+ * <p>
+ * Items are kept in one list sorted by weight, highest first, and the
+ * two children of an item are always next to each other in it: the
+ * lower weight child is stored, the higher weight one precedes it.
+ * When a weight grows past its neighbours the item swaps places with
+ * the first item of its old weight, which keeps the list sorted and
+ * the tree a valid Huffman tree.
+ * <p>
+ * Items live in parallel arrays; index 0 is the head of the list.
+ * Decoding looks up the next 7 bits in a table of shortcuts, so
+ * short codes take one step instead of one per bit.
+ */
+final class HuffmanTree {
+
+    /* Symbols besides the 256 byte values */
+    static final int END_OF_STREAM = 0x100;
+    static final int NEW_BYTE = 0x101;
+
+    private static final int ITEM_COUNT = 0x203 + 1; // Every symbol as a leaf, their parents, and the list head
+    private static final int HEAD = 0;
+    private static final int NONE = -1;
+
+    private static final int LINK_BITS = 7;
+    private static final int LINK_COUNT = 1 << LINK_BITS;
+
+    /*
+     * Initial weight of each byte value, by compression type.
+     * Bytes of weight 0 are left out of the tree until they first appear.
+     * Only the table of type 0, used for generic data, is present. Types
+     * 1 to 8 are StormLib's ByteToWeight_01 to ByteToWeight_08 and must be
+     * copied from there byte for byte, with a stream from StormLib's
+     * encoder to test them against. Until then data of those types is
+     * rejected rather than decoded with the wrong weights.
+     */
+    private static final byte[][] WEIGHTS = new byte[9][];
+
+    static {
+        byte[] generic = new byte[0x100];
+        Arrays.fill(generic, (byte) 0x01);
+        generic[0x00] = 0x0A;
+        generic[0x01] = 0x0A;
+        WEIGHTS[0] = generic;
+    }
+
+    /* Initial tree of each type, built once; a tree is copied from it for every call */
+    private static final HuffmanTree[] INITIAL = new HuffmanTree[WEIGHTS.length];
+
+    static {
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            if (WEIGHTS[i] != null) {
+                INITIAL[i] = new HuffmanTree();
+                INITIAL[i].construct(i);
+            }
+        }
+    }
+
+    private final int[] next = new int[ITEM_COUNT];
+    private final int[] prev = new int[ITEM_COUNT];
+    private final int[] value = new int[ITEM_COUNT];
+    private final int[] weight = new int[ITEM_COUNT];
+    private final int[] parent = new int[ITEM_COUNT];
+    private final int[] childLo = new int[ITEM_COUNT];
+    private final int[] itemOfValue = new int[NEW_BYTE + 1];
+    private int used;
+
+    /* Type 0 trees adapt to every byte, the others only to new bytes. */
+    private boolean adaptive;
+
+    /*
+     * Shortcuts by the next 7 bits: a symbol with a code of linkBits bits,
+     * or the item 7 levels down for longer codes. A shortcut is valid while
+     * linkGeneration matches generation, which changes with the tree.
+     */
+    private final int[] linkGeneration = new int[LINK_COUNT];
+    private final int[] linkBits = new int[LINK_COUNT];
+    private final int[] linkTarget = new int[LINK_COUNT];
+    private int generation;
+
+    /* Input bits, least significant first */
+    private byte[] in;
+    private int inPos;
+    private int inEnd;
+    private long bitBuffer;
+    private int bitCount;
+
+    /**
+     * Checks whether a compression type can be decoded.
+     *
+     * @param compressionType Type byte of the compressed data
+     * @return True if there is a weight table for it
+     */
+    static boolean isSupported(int compressionType) {
+        return compressionType >= 0 && compressionType < WEIGHTS.length && WEIGHTS[compressionType] != null;
+    }
+
+    /**
+     * Decodes data into part of dest.
+     * Decoding stops at the end of stream symbol, when dest is full,
+     * or when the input runs out.
+     *
+     * @param src        Source array holding the compressed data
+     * @param offset     Start of the compressed data
+     * @param length     Length of the compressed data
+     * @param dest       Array to write into
+     * @param destOffset Start of the output in dest
+     * @param destLength Room for output in dest
+     * @return Number of bytes written
+     */
+    int decode(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) {
+        in = src;
+        inPos = offset;
+        inEnd = offset + length;
+        bitBuffer = 0;
+        bitCount = 0;
+        try {
+            if (destLength <= 0 || !fill(8)) {
+                return 0;
+            }
+            build(readBits(8));
+            int out = destOffset;
+            int end = destOffset + destLength;
+            while (true) {
+                int symbol = decodeSymbol();
+                if (symbol < 0 || symbol == END_OF_STREAM) {
+                    break;
+                }
+                if (symbol == NEW_BYTE) {
+                    // The byte follows as is, and joins the tree.
+                    if (!fill(8) || used + 2 > ITEM_COUNT) {
+                        break;
+                    }
+                    symbol = readBits(8);
+                    insertBranch(symbol);
+                    if (!adaptive) {
+                        incrementWeight(itemOfValue[symbol]);
+                    }
+                }
+                dest[out++] = (byte) symbol;
+                if (out >= end) {
+                    break;
+                }
+                if (adaptive) {
+                    incrementWeight(itemOfValue[symbol]);
+                }
+            }
+            return out - destOffset;
+        } finally {
+            in = null;
+        }
+    }
+
+    /**
+     * Encodes part of an array.
+     *
+     * @param src             Source array
+     * @param offset          Start of the data
+     * @param length          Length of the data
+     * @param compressionType Weight table to start from
+     * @return Compressed data, starting with the type byte
+     */
+    byte[] encode(byte[] src, int offset, int length, int compressionType) {
+        build(compressionType);
+        BitWriter out = new BitWriter(length + 16);
+        out.put(compressionType, 8);
+        int[] path = new int[ITEM_COUNT];
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = src[i] & 0xFF;
+            if (itemOfValue[symbol] == NONE) {
+                encodeSymbol(out, itemOfValue[NEW_BYTE], path);
+                out.put(symbol, 8);
+                insertBranch(symbol);
+                // A new byte is counted once here, however the tree adapts.
+                incrementWeight(itemOfValue[symbol]);
+                continue;
+            }
+            encodeSymbol(out, itemOfValue[symbol], path);
+            if (adaptive) {
+                incrementWeight(itemOfValue[symbol]);
+            }
+        }
+        encodeSymbol(out, itemOfValue[END_OF_STREAM], path);
+        return out.toBytes();
+    }
+
+    /**
+     * Resets this tree to the initial tree of a compression type.
+     *
+     * @param compressionType Type byte of the compressed data
+     */
+    private void build(int compressionType) {
+        if (!isSupported(compressionType)) {
+            throw new IllegalArgumentException("Huffman: No weight table for compression type " + compressionType);
+        }
+        HuffmanTree initial = INITIAL[compressionType];
+        System.arraycopy(initial.next, 0, next, 0, initial.used);
+        System.arraycopy(initial.prev, 0, prev, 0, initial.used);
+        System.arraycopy(initial.value, 0, value, 0, initial.used);
+        System.arraycopy(initial.weight, 0, weight, 0, initial.used);
+        System.arraycopy(initial.parent, 0, parent, 0, initial.used);
+        System.arraycopy(initial.childLo, 0, childLo, 0, initial.used);
+        System.arraycopy(initial.itemOfValue, 0, itemOfValue, 0, itemOfValue.length);
+        used = initial.used;
+        adaptive = initial.adaptive;
+        generation++;
+    }
+
+    /**
+     * Builds the initial tree of a compression type from its weights.
+     *
+     * @param compressionType Type byte of the compressed data
+     */
+    private void construct(int compressionType) {
+        byte[] weights = WEIGHTS[compressionType];
+        adaptive = compressionType == 0;
+        used = 1;
+        next[HEAD] = HEAD;
+        prev[HEAD] = HEAD;
+        Arrays.fill(itemOfValue, NONE);
+
+        // Leaves go into the list by weight; equal weights keep byte order.
+        int maxWeight = 0;
+        for (int i = 0; i < 0x100; i++) {
+            if (weights[i] != 0) {
+                int item = createItem(i, weights[i] & 0xFF, true);
+                itemOfValue[i] = item;
+                maxWeight = moveByWeight(item, maxWeight);
+            }
+        }
+        itemOfValue[END_OF_STREAM] = createItem(END_OF_STREAM, 1, false);
+        itemOfValue[NEW_BYTE] = createItem(NEW_BYTE, 1, false);
+
+        // Pair items from the lightest up; the last item left is the root.
+        int lo = prev[HEAD];
+        while (prev[lo] != HEAD) {
+            int hi = prev[lo];
+            int item = createItem(0, weight[hi] + weight[lo], true);
+            parent[lo] = item;
+            parent[hi] = item;
+            childLo[item] = lo;
+            maxWeight = moveByWeight(item, maxWeight);
+            lo = prev[hi];
+        }
+    }
+
+    /**
+     * Creates an item at the front or the back of the list.
+     */
+    private int createItem(int itemValue, int itemWeight, boolean front) {
+        int item = used++;
+        if (front) {
+            linkAfter(HEAD, item);
+        } else {
+            linkAfter(prev[HEAD], item);
+        }
+        value[item] = itemValue;
+        weight[item] = itemWeight;
+        parent[item] = NONE;
+        childLo[item] = NONE;
+        return item;
+    }
+
+    /**
+     * Moves an item created at the front of the list to its place by weight.
+     *
+     * @return Highest weight in the list
+     */
+    private int moveByWeight(int item, int maxWeight) {
+        if (weight[item] < maxWeight) {
+            int higher = findHigherOrEqual(prev[HEAD], weight[item]);
+            unlink(item);
+            linkAfter(higher, item);
+            return maxWeight;
+        }
+        return weight[item];
+    }
+
+    /**
+     * Walks towards the front of the list for an item of at least a weight.
+     *
+     * @return The item, or the list head if there is none
+     */
+    private int findHigherOrEqual(int item, int minWeight) {
+        while (item != HEAD) {
+            if (weight[item] >= minWeight) {
+                return item;
+            }
+            item = prev[item];
+        }
+        return HEAD;
+    }
+
+    private void linkAfter(int at, int item) {
+        next[item] = next[at];
+        prev[item] = at;
+        prev[next[at]] = item;
+        next[at] = item;
+    }
+
+    private void unlink(int item) {
+        next[prev[item]] = next[item];
+        prev[next[item]] = prev[item];
+    }
+
+    /**
+     * Adds a byte to the tree. The lightest leaf becomes the parent of
+     * a copy of itself and of the new byte, which starts at weight 0.
+     *
+     * @param newValue Byte value
+     */
+    private void insertBranch(int newValue) {
+        int last = prev[HEAD];
+        int hi = createItem(value[last], weight[last], false);
+        parent[hi] = last;
+        itemOfValue[value[last]] = hi;
+        int lo = createItem(newValue, 0, false);
+        parent[lo] = last;
+        childLo[last] = lo;
+        itemOfValue[newValue] = lo;
+        generation++;
+        incrementWeight(lo);
+    }
+
+    /**
+     * Increments the weight of an item and its ancestors, swapping each
+     * with the first item of its old weight where needed.
+     *
+     * @param item Leaf whose symbol was coded
+     */
+    private void incrementWeight(int item) {
+        for (; item != NONE; item = parent[item]) {
+            weight[item]++;
+            int higher = findHigherOrEqual(prev[item], weight[item]);
+            int other = next[higher];
+            if (other == item) {
+                continue;
+            }
+            // Swap the places of both items in the list...
+            unlink(other);
+            linkAfter(item, other);
+            unlink(item);
+            linkAfter(higher, item);
+
+            // ...and in the tree.
+            int otherParentLo = childLo[parent[other]];
+            int itemParent = parent[item];
+            if (childLo[itemParent] == item) {
+                childLo[itemParent] = other;
+            }
+            if (otherParentLo == other) {
+                childLo[parent[other]] = item;
+            }
+            parent[item] = parent[other];
+            parent[other] = itemParent;
+            generation++;
+        }
+    }
+
+    /**
+     * Decodes one symbol.
+     *
+     * @return Symbol, or -1 if the input ran out
+     */
+    private int decodeSymbol() {
+        int linkIndex = NONE;
+        int item = next[HEAD];
+        if (fill(LINK_BITS)) {
+            linkIndex = (int) (bitBuffer & (LINK_COUNT - 1));
+            if (linkGeneration[linkIndex] == generation) {
+                if (linkBits[linkIndex] <= LINK_BITS) {
+                    skipBits(linkBits[linkIndex]);
+                    return linkTarget[linkIndex];
+                }
+                // Longer codes still skip their first 7 levels.
+                skipBits(LINK_BITS);
+                item = linkTarget[linkIndex];
+                linkIndex = NONE;
+            }
+        }
+
+        int bits = 0;
+        int linkItem = NONE;
+        while (childLo[item] != NONE) {
+            if (!fill(1)) {
+                return -1;
+            }
+            int bit = (int) (bitBuffer & 1);
+            skipBits(1);
+            item = bit != 0 ? prev[childLo[item]] : childLo[item];
+            if (++bits == LINK_BITS) {
+                linkItem = item;
+            }
+        }
+
+        if (linkIndex != NONE) {
+            if (bits > LINK_BITS) {
+                linkGeneration[linkIndex] = generation;
+                linkBits[linkIndex] = bits;
+                linkTarget[linkIndex] = linkItem;
+            } else {
+                // Every index starting with this code decodes to the same symbol.
+                for (int i = linkIndex & ((1 << bits) - 1); i < LINK_COUNT; i += 1 << bits) {
+                    linkGeneration[i] = generation;
+                    linkBits[i] = bits;
+                    linkTarget[i] = value[item];
+                }
+            }
+        }
+        return value[item];
+    }
+
+    /**
+     * Writes the code of an item, root first.
+     */
+    private void encodeSymbol(BitWriter out, int item, int[] path) {
+        int depth = 0;
+        for (int up = parent[item]; up != NONE; item = up, up = parent[up]) {
+            path[depth++] = childLo[up] != item ? 1 : 0;
+        }
+        while (depth > 0) {
+            out.put(path[--depth], 1);
+        }
+    }
+
+    private boolean fill(int bits) {
+        while (bitCount < bits && inPos < inEnd) {
+            bitBuffer |= (long) (in[inPos++] & 0xFF) << bitCount;
+            bitCount += 8;
+        }
+        return bitCount >= bits;
+    }
+
+    private int readBits(int bits) {
+        int result = (int) (bitBuffer & ((1L << bits) - 1));
+        skipBits(bits);
+        return result;
+    }
+
+    private void skipBits(int bits) {
+        bitBuffer >>>= bits;
+        bitCount -= bits;
+    }
+
+    /**
+     * Writes bits least significant first.
+     */
+    private static final class BitWriter {
+        private byte[] buffer;
+        private int position;
+        private int bits;
+        private int count;
+
+        private BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void put(int data, int length) {
+            bits |= data << count;
+            count += length;
+            while (count >= 8) {
+                if (position == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                buffer[position++] = (byte) bits;
+                bits >>>= 8;
+                count -= 8;
+            }
+        }
+
+        private byte[] toBytes() {
+            byte[] result = Arrays.copyOf(buffer, position + (count > 0 ? 1 : 0));
+            if (count > 0) {
+                result[position] = (byte) bits;
+            }
+            return result;
+        }
+    }
+}
@@ -1,13 +1,39 @@
 package compression;
 
 import compression.exploder.Exploder;
+import compression.exploder.Imploder;
 import interfaces.IGenericCompression;
 
 /**
- * Wrapper for Exploder class.
+ * Wrapper for Exploder and Imploder classes.
  */
 public final class ImplodeCompression implements IGenericCompression {
 
+    /* Dictionary size byte, or 0 to pick one from the size of the data */
+    private final int dictSizeByte;
+    private final int literalMode;
+
+    /**
+     * Initializes the compression type for binary data, with a
+     * dictionary sized to the data like the PKWARE library does for archives.
+     */
+    public ImplodeCompression() {
+        this(Imploder.PK_LITERAL_SIZE_FIXED, 0);
+    }
+
+    /**
+     * Initializes the compression type.
+     *
+     * @param literalMode  Imploder.PK_LITERAL_SIZE_FIXED for binary data or
+     *                     Imploder.PK_LITERAL_SIZE_VARIABLE for text
+     * @param dictSizeByte Imploder.PK_DICT_SIZE_1K, _2K or _4K, or 0 to
+     *                     pick one from the size of the data
+     */
+    public ImplodeCompression(int literalMode, int dictSizeByte) {
+        this.literalMode = literalMode;
+        this.dictSizeByte = dictSizeByte;
+    }
+
     /**
      * Applies this compression type.
      *
@@ -16,8 +42,44 @@ public final class ImplodeCompression implements IGenericCompression {
      */
     @Override
     public byte[] apply(byte[] src) {
-        // don't care about this
-        return new byte[0];
+        return apply(src, 0, src.length);
+    }
+
+    /**
+     * Implodes part of an array.
+     *
+     * @param src    Array holding the uncompressed data
+     * @param offset Start of the data
+     * @param length Length of the data
+     * @return Compressed data
+     */
+    public byte[] apply(byte[] src, int offset, int length) {
+        return Imploder.pkimplode(src, offset, length, literalMode, dictSizeFor(length));
+    }
+
+    /**
+     * Picks the dictionary size for data of a given length.
+     * A dictionary larger than the data only costs offset bits.
+     *
+     * @param length Length of the data
+     * @return Dictionary size byte
+     */
+    private int dictSizeFor(int length) {
+        if (dictSizeByte != 0) {
+            return dictSizeByte;
+        }
+        if (length < 0x600) {
+            return Imploder.PK_DICT_SIZE_1K;
+        }
+        return length < 0xC00 ? Imploder.PK_DICT_SIZE_2K : Imploder.PK_DICT_SIZE_4K;
+    }
+
+    public int getLiteralMode() {
+        return literalMode;
+    }
+
+    public int getDictSizeByte() {
+        return dictSizeByte;
     }
 
     /**
@@ -35,4 +97,19 @@ public final class ImplodeCompression implements IGenericCompression {
         Exploder.pkexplode(src, dest);
         return dest;
     }
+
+    /**
+     * Explodes part of src into dest, reading the compressed bytes in place.
+     *
+     * @param src    Source array holding the compressed data
+     * @param offset Start of the compressed data
+     * @param length Length of the compressed data
+     * @param dest   Array of the size of the uncompressed data
+     * @return Uncompressed data
+     */
+    @Override
+    public byte[] undo(byte[] src, int offset, int length, byte[] dest) {
+        Exploder.pkexplode(src, offset, length, dest);
+        return dest;
+    }
 }
@@ -161,14 +161,21 @@ public final class Exploder
             };
 
     public static int pkexplode(  byte[] pInBuffer, byte[] pOutBuffer)
+    {
+        return pkexplode(pInBuffer, 0, pInBuffer.length, pOutBuffer);
+    }
+
+    // Explodes nInSize bytes of pInBuffer, starting at nInOffset
+    public static int pkexplode(  byte[] pInBuffer, int nInOffset, int nInSize, byte[] pOutBuffer)
     {
         // Compressed data cannot be less than 4 bytes;
         // this is not possible in any case whatsoever
-        if (pInBuffer.length < 4)
+        if (nInSize < 4)
             throw new IllegalArgumentException("PK_ERR_INCOMPLETE_INPUT: Incomplete input");
 
         int pOutPos = 0;
-        int pInPos = 0;
+        int pInPos = nInOffset;
+        int pInEnd = nInOffset + nInSize;
 
         // Get header from compressed data
         byte nLitSize = pInBuffer[pInPos++];
@@ -211,7 +218,7 @@ public final class Exploder
             while (nBits < 16)
             {
                 // If input buffer is empty before end of stream, buffer is incomplete
-                if (pInPos >= pInBuffer.length)
+                if (pInPos >= pInEnd)
                 {
                     // Store the current size of output
                     // nOutSize = pOutPos - pOutBuffer;
@@ -256,7 +263,7 @@ public final class Exploder
                 while (nBits < 14)
                 {
                     // If input buffer is empty before end of stream, buffer is incomplete
-                    if (pInPos >= pInBuffer.length)
+                    if (pInPos >= pInEnd)
                     {
                         // Store the current size of output
                         // nOutSize = pOutPos - pOutBuffer;
@@ -0,0 +1,241 @@
+package compression.exploder;
+
+import java.util.Arrays;
+
+/**
+ * Implode function producing data in the PKWARE Data Compression library
+ * format, the inverse of {@link Exploder#pkexplode(byte[], byte[])}.
+ * <p>
+ * The bit codes are the tables of Exploder. Matches are found with hash
+ * chains keyed on the next two bytes and taken greedily; the chain walk
+ * is bounded so throughput doesn't collapse on repetitive data.
+ */
+public final class Imploder
+{
+    public static final int PK_LITERAL_SIZE_FIXED    = 0; // Use fixed size literal bytes, used for binary data
+    public static final int PK_LITERAL_SIZE_VARIABLE = 1; // Use variable size literal bytes, used for text
+
+    // Dictionary size bytes; the dictionary holds 64 << n bytes
+    public static final int PK_DICT_SIZE_1K = 4;
+    public static final int PK_DICT_SIZE_2K = 5;
+    public static final int PK_DICT_SIZE_4K = 6;
+
+    private static final int MIN_MATCH = 2;
+    private static final int MAX_MATCH = 518;
+    private static final int END_OF_STREAM = 519; // Copy length marking the end of the data
+
+    // Matches of length 2 only have 2 low offset bits, so they can't reach further
+    private static final int MAX_SHORT_DISTANCE = 0x100;
+
+    private static final int HASH_SIZE = 0x1000;
+    private static final int CHAIN_SIZE = 0x2000; // Twice the largest dictionary, so live links are never overwritten
+    private static final int MAX_CHAIN = 48;      // Candidates looked at per position
+
+    // Index into LenBase of every copy length
+    private static final byte[] LenIndex = new byte[END_OF_STREAM + 1];
+
+    static
+    {
+        for (int i = 0; i < Exploder.LenBase.length; i++)
+        {
+            int top = i + 1 < Exploder.LenBase.length ? Exploder.LenBase[i + 1] : END_OF_STREAM + 1;
+            Arrays.fill(LenIndex, Exploder.LenBase[i], top, (byte) i);
+        }
+    }
+
+    /**
+     * Hash chain heads and links, reused by each thread.
+     */
+    private static final ThreadLocal<int[][]> CHAINS =
+            ThreadLocal.withInitial(() -> new int[][]{new int[HASH_SIZE], new int[CHAIN_SIZE]});
+
+    private Imploder()
+    {
+    }
+
+    public static byte[] pkimplode(byte[] pInBuffer, int nLitSize, int nDictSizeByte)
+    {
+        return pkimplode(pInBuffer, 0, pInBuffer.length, nLitSize, nDictSizeByte);
+    }
+
+    // Implodes nInSize bytes of pInBuffer, starting at nInOffset
+    public static byte[] pkimplode(byte[] pInBuffer, int nInOffset, int nInSize, int nLitSize, int nDictSizeByte)
+    {
+        if (nLitSize != PK_LITERAL_SIZE_FIXED && nLitSize != PK_LITERAL_SIZE_VARIABLE)
+            throw new IllegalArgumentException("PK_ERR_INVALID_MODE: Invalid LitSize: " + nLitSize);
+        if (nDictSizeByte < PK_DICT_SIZE_1K || nDictSizeByte > PK_DICT_SIZE_4K)
+            throw new IllegalArgumentException("PK_ERR_INVALID_DICTSIZE: Invalid DictSizeByte: " + nDictSizeByte);
+
+        int nDictSize = 64 << nDictSizeByte;
+
+        // A literal takes at most 14 bits, so two bytes per input byte always fit,
+        // along with the header and the end of stream marker
+        BitWriter out = new BitWriter(2 + 2 * nInSize + 3);
+        out.pOutBuffer[out.pOutPos++] = (byte) nLitSize;
+        out.pOutBuffer[out.pOutPos++] = (byte) nDictSizeByte;
+
+        int[][] chains = CHAINS.get();
+        int[] head = chains[0];
+        int[] prev = chains[1];
+        Arrays.fill(head, -1);
+
+        int pos = 0;
+        while (pos < nInSize)
+        {
+            int nMaxLen = Math.min(MAX_MATCH, nInSize - pos);
+            int nCopyLen = 0;
+            int nDistance = 0;
+
+            if (nMaxLen >= MIN_MATCH)
+            {
+                int pCur = nInOffset + pos;
+                int nChain = MAX_CHAIN;
+                int candidate = head[hash(pInBuffer, pCur)];
+                while (candidate >= 0 && nChain-- > 0)
+                {
+                    int dist = pos - candidate;
+                    if (dist > nDictSize)
+                        break;
+
+                    int pCand = nInOffset + candidate;
+                    // Only a candidate that beats the best match so far is worth comparing in full
+                    if (pInBuffer[pCand + nCopyLen] == pInBuffer[pCur + nCopyLen])
+                    {
+                        int len = 0;
+                        while (len < nMaxLen && pInBuffer[pCand + len] == pInBuffer[pCur + len])
+                            len++;
+
+                        if (len > nCopyLen && (len > MIN_MATCH || dist <= MAX_SHORT_DISTANCE))
+                        {
+                            nCopyLen = len;
+                            nDistance = dist;
+                            if (len == nMaxLen)
+                                break;
+                        }
+                    }
+                    candidate = prev[candidate & (CHAIN_SIZE - 1)];
+                }
+
+                // In text mode two short literals can be cheaper than a short copy
+                if (nCopyLen == MIN_MATCH && nLitSize == PK_LITERAL_SIZE_VARIABLE
+                        && literalCost(pInBuffer[pCur], nLitSize) + literalCost(pInBuffer[pCur + 1], nLitSize)
+                        <= copyCost(MIN_MATCH, nDistance, nDictSizeByte))
+                    nCopyLen = 0;
+            }
+
+            if (nCopyLen >= MIN_MATCH)
+            {
+                writeCopy(out, nCopyLen, nDistance, nDictSizeByte);
+            }
+            else
+            {
+                writeLiteral(out, pInBuffer[nInOffset + pos] & 0xFF, nLitSize);
+                nCopyLen = 1;
+            }
+
+            // Every position covered gets added to the dictionary; the last byte can't start a match
+            for (int end = pos + nCopyLen; pos < end; pos++)
+            {
+                if (pos + 1 < nInSize)
+                {
+                    int h = hash(pInBuffer, nInOffset + pos);
+                    prev[pos & (CHAIN_SIZE - 1)] = head[h];
+                    head[h] = pos;
+                }
+            }
+        }
+
+        // Copy length 519 marks the end of the data
+        writeCopyLength(out, END_OF_STREAM);
+        out.flush();
+        return Arrays.copyOf(out.pOutBuffer, out.pOutPos);
+    }
+
+    private static int hash(byte[] pBuffer, int pPos)
+    {
+        return (((pBuffer[pPos] & 0xFF) << 4) ^ (pBuffer[pPos + 1] & 0xFF)) & (HASH_SIZE - 1);
+    }
+
+    private static void writeLiteral(BitWriter out, int nByte, int nLitSize)
+    {
+        if (nLitSize == PK_LITERAL_SIZE_FIXED)
+        {
+            // First bit 0, then the byte itself
+            out.putBits(nByte << 1, 9);
+        }
+        else
+        {
+            out.putBits(0, 1);
+            out.putBits(Exploder.ChCode[nByte] & 0xFFFF, Exploder.ChBits[nByte]);
+        }
+    }
+
+    private static void writeCopyLength(BitWriter out, int nCopyLen)
+    {
+        int i = LenIndex[nCopyLen];
+        // First bit 1, then the base value and the extra bits of the copy length
+        out.putBits(1 | ((Exploder.LenCode[i] & 0xFF) << 1), 1 + Exploder.LenBits[i]);
+        out.putBits(nCopyLen - Exploder.LenBase[i], Exploder.ExLenBits[i]);
+    }
+
+    private static void writeCopy(BitWriter out, int nCopyLen, int nDistance, int nDictSizeByte)
+    {
+        writeCopyLength(out, nCopyLen);
+
+        // Length 2 copies keep 2 low offset bits; all others keep as many as the dictionary size byte
+        int nLowBits = nCopyLen == MIN_MATCH ? 2 : nDictSizeByte;
+        int nOffset = nDistance - 1;
+        int i = nOffset >> nLowBits;
+        out.putBits(Exploder.OffsCode[i] & 0xFF, Exploder.OffsBits[i]);
+        out.putBits(nOffset & ((1 << nLowBits) - 1), nLowBits);
+    }
+
+    private static int literalCost(byte nByte, int nLitSize)
+    {
+        return nLitSize == PK_LITERAL_SIZE_FIXED ? 9 : 1 + Exploder.ChBits[nByte & 0xFF];
+    }
+
+    private static int copyCost(int nCopyLen, int nDistance, int nDictSizeByte)
+    {
+        int i = LenIndex[nCopyLen];
+        int nLowBits = nCopyLen == MIN_MATCH ? 2 : nDictSizeByte;
+        return 1 + Exploder.LenBits[i] + Exploder.ExLenBits[i]
+                + Exploder.OffsBits[(nDistance - 1) >> nLowBits] + nLowBits;
+    }
+
+    /**
+     * Writes bits least significant first, the order Exploder reads them in.
+     */
+    private static final class BitWriter
+    {
+        private final byte[] pOutBuffer;
+        private int pOutPos;
+        private long nBitBuffer;
+        private int nBits;
+
+        private BitWriter(int nCapacity)
+        {
+            pOutBuffer = new byte[nCapacity];
+        }
+
+        private void putBits(int nValue, int nCount)
+        {
+            nBitBuffer |= (long) nValue << nBits;
+            nBits += nCount;
+            while (nBits >= 8)
+            {
+                pOutBuffer[pOutPos++] = (byte) nBitBuffer;
+                nBitBuffer >>>= 8;
+                nBits -= 8;
+            }
+        }
+
+        private void flush()
+        {
+            if (nBits > 0)
+                pOutBuffer[pOutPos++] = (byte) nBitBuffer;
+            nBitBuffer = 0;
+            nBits = 0;
+        }
+    }
+}
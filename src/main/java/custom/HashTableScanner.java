@@ -1,5 +1,6 @@
 package custom;
 
+import frost.FileNameHash;
 import frost.FrostSecurity;
 import model.BlockTable;
 import model.BlockTableEntry;
@@ -9,9 +10,6 @@ import model.HashTableEntry;
 import java.util.ArrayList;
 import java.util.List;
 
-import static frost.FrostConstants.MPQ_HASH_NAME_A;
-import static frost.FrostConstants.MPQ_HASH_NAME_B;
-
 public class HashTableScanner {
 
     private HashTable hashTable;
@@ -28,8 +26,9 @@ public class HashTableScanner {
 
     public List<HashTableEntry> scan(String fileName, int fileSize) {
         List<HashTableEntry> entries = new ArrayList<>();
-        int hashA = frostSecurity.hashAsInt(fileName, MPQ_HASH_NAME_A);
-        int hashB = frostSecurity.hashAsInt(fileName, MPQ_HASH_NAME_B);
+        FileNameHash hash = frostSecurity.hashAll(fileName);
+        int hashA = hash.getNameA();
+        int hashB = hash.getNameB();
         for(HashTableEntry entry : hashTable.getEntries()) {
             if(entry.getFilePathHashA() == hashA &&
                     entry.getFilePathHashB() == hashB) {
@@ -0,0 +1,66 @@
+package frost;
+
+/**
+ * All Storm hashes of one file name, computed together by
+ * {@link FrostSecurity#hashAll(String)}.
+ */
+public final class FileNameHash {
+
+    private final int tableOffset;
+    private final int nameA;
+    private final int nameB;
+    private final int fileKey;
+
+    /**
+     * Creates a set of file name hashes.
+     *
+     * @param tableOffset Hash of type MPQ_HASH_TABLE_OFFSET
+     * @param nameA       Hash of type MPQ_HASH_NAME_A
+     * @param nameB       Hash of type MPQ_HASH_NAME_B
+     * @param fileKey     Hash of type MPQ_HASH_FILE_KEY of the
+     *                    name without its directory
+     */
+    public FileNameHash(int tableOffset, int nameA, int nameB, int fileKey) {
+        this.tableOffset = tableOffset;
+        this.nameA = nameA;
+        this.nameB = nameB;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * Hash that picks the first hash table slot to probe.
+     *
+     * @return Table offset hash
+     */
+    public int getTableOffset() {
+        return tableOffset;
+    }
+
+    public int getNameA() {
+        return nameA;
+    }
+
+    public int getNameB() {
+        return nameB;
+    }
+
+    /**
+     * Encryption key of the file, before any key adjustment.
+     * Only the part of the name after the last backslash is hashed.
+     *
+     * @return File key hash
+     */
+    public int getFileKey() {
+        return fileKey;
+    }
+
+    @Override
+    public String toString() {
+        return "FileNameHash{" +
+                "tableOffset=" + tableOffset +
+                ", nameA=" + nameA +
+                ", nameB=" + nameB +
+                ", fileKey=" + fileKey +
+                '}';
+    }
+}
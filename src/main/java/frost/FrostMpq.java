@@ -1,22 +1,37 @@
 package frost;
 
+import interfaces.IArchiveReader;
 import interfaces.IFrostMpq;
 import interfaces.IByteSerializable;
+import io.FileWriter;
+import io.MappedArchiveReader;
 import model.MpqObject;
-import com.github.zachcloud.reader.BinaryReader;
+import model.SectorCache;
 import settings.MpqContext;
 import settings.MpqLogger;
 import settings.MpqSettings;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Represents an MPQ archive that can be read, extracted, and modified.
+ * <p>
+ * Reads (getFileBytes, extraction, lookups) may run from many threads
+ * at once. Changes to the archive (import, delete, save) wait for
+ * running reads to finish and block new ones while they run.
  */
 public final class FrostMpq implements IFrostMpq, IByteSerializable {
 
@@ -30,11 +45,21 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      */
     private MpqObject mpqObject;
 
+    /**
+     * Mapping of the origin that mpqObject reads from
+     */
+    private IArchiveReader reader;
+
     /**
      * MPQ Context, storing the logger and settings.
      */
     private MpqContext context;
 
+    /**
+     * Guards the model object: shared for reads, exclusive for changes.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     /**
      * Creates a FrostMpq with the specified file
      * Default logger/settings
@@ -150,35 +175,161 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      * the same state as the object.
      *
      * @return Byte array of object.
+     * @deprecated Holds the whole archive on the heap; use
+     * {@link #save(File)} to stream it to a file instead.
      */
+    @Deprecated
     @Override
     public byte[] toBytes() {
-        return mpqObject.toBytes();
+        lock.writeLock().lock();
+        try {
+            return mpqObject.toBytes();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Saves this MPQ.
+     * The archive is streamed to a temporary file which then replaces
+     * the destination. The destination may be the file this MPQ was
+     * read from; its mapping is then released before it is replaced,
+     * and the new file is mapped instead.
      *
      * @param destination File to save to.
      */
     @Override
     public void save(File destination) {
+        lock.writeLock().lock();
         try {
             delete("(attributes)");
-            context.getFileWriter().write(toBytes(), destination);
+            if (isOrigin(destination)) {
+                saveOverOrigin();
+            } else {
+                context.getFileWriter().writeFrom(mpqObject, destination);
+            }
         } catch (Exception ex) {
             ex.printStackTrace();
             context.getErrorHandler().handleCriticalError("Could not save file: " + ex.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves changes into the file this MPQ was read from, without
+     * rewriting it. New files go into free space or at the end of
+     * the file, and only the tables and header are rewritten.
+     * <p>
+     * Unlike save, this is not atomic: if it fails part way, the
+     * file may be left damaged.
+     */
+    @Override
+    public void saveInPlace() {
+        lock.writeLock().lock();
+        try {
+            delete("(attributes)");
+            try (FileChannel channel = FileChannel.open(origin.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                mpqObject.writeChanges(channel);
+            }
+            reloadFile();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            context.getErrorHandler().handleCriticalError("Could not update file: " + ex.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the origin with this MPQ.
+     * The origin is read while the new archive is written, so the mapping
+     * is only released once the temporary file is complete; the origin
+     * can't be replaced on every platform while it is mapped. If it can't
+     * be replaced at all, the temporary file is copied over it, which
+     * unlike replacing it is not atomic.
+     *
+     * @throws IOException If the origin can't be written.
+     */
+    private void saveOverOrigin() throws IOException {
+        FileWriter fileWriter = context.getFileWriter();
+        Path temp = fileWriter.writeTemp(mpqObject, origin);
+        Set<String> knownFiles = new HashSet<>(mpqObject.getFileNames());
+        try {
+            closeReader();
+            try {
+                fileWriter.replace(temp, origin);
+            } catch (IOException ex) {
+                context.getLogger().warn("Could not replace " + origin + " (" + ex.getMessage()
+                        + "); copying over it instead");
+                fileWriter.writeOver(temp, origin);
+            }
+        } finally {
+            // Mapped again even if saving failed, so this MPQ can still be used.
+            readFile(knownFiles);
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Determines if the file is the archive this MPQ was read from.
+     *
+     * @param file File to check
+     * @return True if it is the origin file
+     */
+    private boolean isOrigin(File file) throws IOException {
+        return file.getCanonicalFile().equals(origin.getCanonicalFile());
+    }
+
+    /**
+     * Reads the origin file again after it was overwritten, since the
+     * model still points at where blocks were in the old file.
+     * File names that were already known stay known.
+     */
+    private void reloadFile() {
+        readFile(new HashSet<>(mpqObject.getFileNames()));
+    }
+
+    /**
+     * Reads the origin again, keeping file names that were already known.
+     *
+     * @param knownFiles File names to add to the new model object
+     */
+    private void readFile(Set<String> knownFiles) {
+        readFile();
+        for (String fileName : knownFiles) {
+            mpqObject.addFileName(fileName);
         }
     }
 
     /**
      * Reads MPQ file data into an MPQ model object
+     * The archive is memory mapped rather than loaded onto the heap.
+     * The mapping of an earlier read is released first.
      */
     private void readFile() {
-        BinaryReader reader = new BinaryReader(origin);
-        this.mpqObject = new MpqObject(context);
-        mpqObject.read(reader);
+        closeReader();
+        try {
+            this.reader = new MappedArchiveReader(origin);
+            this.mpqObject = new MpqObject(context);
+            mpqObject.read(reader);
+        } catch (IOException ex) {
+            context.getErrorHandler().handleCriticalError("Could not open file: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Releases the mapping of the origin, if there is one.
+     * The model object can't read files until the origin is read again.
+     */
+    private void closeReader() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
     }
 
     /**
@@ -189,7 +340,69 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      */
     @Override
     public boolean fileExists(String fileName) {
-        return mpqObject.fileExists(fileName);
+        lock.readLock().lock();
+        try {
+            return mpqObject.fileExists(fileName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the uncompressed bytes of a file in the archive.
+     * Safe to call from many threads on the same archive.
+     *
+     * @param fileName File name in archive
+     * @return File data
+     */
+    @Override
+    public byte[] getFileBytes(String fileName) {
+        lock.readLock().lock();
+        try {
+            return mpqObject.getFileBytes(fileName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a range of a file in the archive, decoding only the
+     * sectors that cover it. The range is cut short at the end of
+     * the file. Safe to call from many threads on the same archive.
+     *
+     * @param fileName File name in archive
+     * @param offset   First byte to read
+     * @param length   Number of bytes to read
+     * @return File data in the range
+     */
+    @Override
+    public byte[] read(String fileName, int offset, int length) {
+        lock.readLock().lock();
+        try {
+            return mpqObject.read(fileName, offset, length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens a stream over a file in the archive. Sectors are decoded
+     * as they are reached, so only one sector is held in memory.
+     * Wrap with Channels.newChannel for a ReadableByteChannel.
+     * <p>
+     * The stream must not be used after the archive is changed.
+     *
+     * @param fileName File name in archive
+     * @return Stream of file data
+     */
+    @Override
+    public InputStream openStream(String fileName) {
+        lock.readLock().lock();
+        try {
+            return mpqObject.openStream(fileName);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -199,7 +412,12 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      */
     @Override
     public void extractFile(String fileName) {
-        mpqObject.extractFile(fileName);
+        lock.readLock().lock();
+        try {
+            mpqObject.extractFile(fileName);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -209,18 +427,37 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      */
     @Override
     public void addExternalListfile(File externalListfilePath) {
-        if (mpqObject.getUnknownFileCount() == 0) {
-            context.getLogger().info("Skipping external listfile since we know all files.");
-        }
+        lock.writeLock().lock();
         try {
-            BufferedReader br = new BufferedReader(new FileReader(externalListfilePath));
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Only adds if it actually exists
-                mpqObject.addFileName(line);
+            if (mpqObject.getUnknownFileCount() == 0) {
+                context.getLogger().info("Skipping external listfile since we know all files.");
             }
+            // Only adds names that actually exist
+            ListfileResolver resolver = new ListfileResolver(mpqObject.getFrostSecurity());
+            resolver.addListfile(externalListfilePath);
+            mpqObject.addFileNames(resolver);
         } catch (IOException ex) {
             context.getErrorHandler().handleCriticalError(ex.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds every name the resolver knows that exists in this archive
+     * to the known files. One resolver can be shared by many archives,
+     * so a large listfile only has to be loaded and hashed once.
+     *
+     * @param resolver Resolver loaded with candidate names
+     * @return Number of file names found in this archive
+     */
+    @Override
+    public int addListfile(ListfileResolver resolver) {
+        lock.writeLock().lock();
+        try {
+            return mpqObject.addFileNames(resolver);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -235,15 +472,27 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      */
     @Override
     public Set<String> getFileNames() {
-        return Collections.unmodifiableSet(mpqObject.getFileNames());
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableSet(mpqObject.getFileNames());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
      * Extracts all files that we know the name of
+     * With more than one extraction thread, up to (threads * 3) whole
+     * decoded files are held in memory at once.
      */
     @Override
     public void extractAllKnown() {
-        mpqObject.extractAllKnown();
+        lock.readLock().lock();
+        try {
+            mpqObject.extractAllKnown();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -267,7 +516,12 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      */
     @Override
     public int getFileCount() {
-        return mpqObject.getFileCount();
+        lock.readLock().lock();
+        try {
+            return mpqObject.getFileCount();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -277,7 +531,12 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      */
     @Override
     public int getKnownFileCount() {
-        return mpqObject.getKnownFileCount();
+        lock.readLock().lock();
+        try {
+            return mpqObject.getKnownFileCount();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -286,7 +545,12 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      * @return Number of unknown files
      */
     public int getUnknownFileCount() {
-        return mpqObject.getUnknownFileCount();
+        lock.readLock().lock();
+        try {
+            return mpqObject.getUnknownFileCount();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -297,7 +561,28 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      * @param data File bytes
      */
     public void importFile(String name, byte[] data) {
-        mpqObject.importFile(name, data);
+        lock.writeLock().lock();
+        try {
+            mpqObject.importFile(name, data);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Imports many files into the archive at once.
+     * Replaces any files that already exist. Prefer this over
+     * repeated importFile calls when adding a batch of files.
+     *
+     * @param files File names and their bytes
+     */
+    public void importFiles(Map<String, byte[]> files) {
+        lock.writeLock().lock();
+        try {
+            mpqObject.importFiles(files);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -308,7 +593,42 @@ public final class FrostMpq implements IFrostMpq, IByteSerializable {
      * returns false if the file didn't exist
      */
     public boolean delete(String name) {
-        return mpqObject.delete(name);
+        lock.writeLock().lock();
+        try {
+            return mpqObject.delete(name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes many files from the archive at once.
+     *
+     * @param names Filenames to delete
+     * @return Number of files deleted; files that didn't exist are skipped
+     */
+    public int deleteFiles(Collection<String> names) {
+        lock.writeLock().lock();
+        try {
+            return mpqObject.deleteFiles(names);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the cache of decoded sectors for this archive,
+     * which also counts cache hits and misses.
+     *
+     * @return Sector cache
+     */
+    public SectorCache getSectorCache() {
+        lock.readLock().lock();
+        try {
+            return mpqObject.getSectorCache();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public File getOrigin() {
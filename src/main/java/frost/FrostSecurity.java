@@ -2,15 +2,18 @@ package frost;
 
 import exception.EncryptionException;
 import exception.HashingException;
-import helper.ByteHelper;
 import interfaces.IStormCrypt;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 import static frost.FrostConstants.MPQ_HASH_FILE_KEY;
+import static frost.FrostConstants.MPQ_HASH_NAME_A;
+import static frost.FrostConstants.MPQ_HASH_NAME_B;
 import static frost.FrostConstants.MPQ_HASH_TABLE_OFFSET;
-import static helper.ByteHelper.extractBytes;
 
 /**
  * MPQ Security
@@ -40,6 +43,27 @@ public final class FrostSecurity implements IStormCrypt {
     /* FrostSecurity table that is set on class startup. */
     private long[] encryptionTable;
 
+    /* Slice of the table used by the crypt functions, indexed by key & 0xFF. */
+    private int[] cryptTable;
+
+    /* Uppercases ASCII and turns '/' into a backslash, as Storm does when hashing. */
+    private static final int[] ASCII_UPPER_TABLE = new int[0x80];
+
+    static {
+        for (int c = 0; c < ASCII_UPPER_TABLE.length; c++) {
+            if (c >= 'a' && c <= 'z') {
+                ASCII_UPPER_TABLE[c] = c - 0x20;
+            } else if (c == '/') {
+                ASCII_UPPER_TABLE[c] = '\\';
+            } else {
+                ASCII_UPPER_TABLE[c] = c;
+            }
+        }
+    }
+
+    /* Optional cache of name hashes; null when disabled. */
+    private NameHashCache nameHashCache;
+
     /**
      * Creates a new FrostSecurity with default parameters
      * and little endian byteorder.
@@ -57,6 +81,10 @@ public final class FrostSecurity implements IStormCrypt {
     public FrostSecurity(ByteOrder byteOrder) {
         this.encryptionTable = new long[ENCRYPTION_TABLE_SIZE];
         this.initializeEncryptionTable();
+        this.cryptTable = new int[0x100];
+        for (int i = 0; i < cryptTable.length; i++) {
+            cryptTable[i] = (int) encryptionTable[0x400 + i];
+        }
         this.byteOrder = byteOrder;
     }
 
@@ -119,6 +147,9 @@ public final class FrostSecurity implements IStormCrypt {
         s = s.toUpperCase();
         for (char c : s.toCharArray()) {
             ch = Byte.toUnsignedInt((byte) c);
+            if (ch == '/') {
+                ch = '\\';
+            }
             seed1 = encryptionTable[(hashType * 0x100) + ch] ^ (seed1 + seed2);
             seed2 = ch + seed1 + seed2 + (seed2 << 5) + 3;
         }
@@ -126,21 +157,99 @@ public final class FrostSecurity implements IStormCrypt {
     }
 
     /**
-     * Transforms a byte array with length divisible by 4 into an array
-     * Converts each integer contained in the byte array into an int
-     * For example bytes 0-3, 4-7, etc.
+     * Computes every Storm hash of a file name in a single pass:
+     * the table offset, name A and name B hashes of the full name,
+     * and the file key of the name after its last backslash.
+     * Uses the name hash cache if one is set.
+     *
+     * @param name File name to hash
+     * @return Hashes of the name
+     */
+    public FileNameHash hashAll(String name) {
+        if (name == null) {
+            throw new HashingException("Cannot hash a null String");
+        }
+        NameHashCache cache = nameHashCache;
+        if (cache != null) {
+            FileNameHash cached = cache.get(name);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        FileNameHash hash = computeHashes(name);
+        if (cache != null) {
+            cache.put(name, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes a name with all four hash types at once.
+     * Only the low 32 bits of each seed affect the result,
+     * so the seeds are kept as ints.
      *
-     * @param src Source byte array
-     * @return Converted integer array
+     * @param name File name to hash
+     * @return Hashes of the name
      */
-    private int[] transform(byte[] src) {
-        int convertedLength = src.length / 4;
-        int[] converted = new int[convertedLength];
-        for (int i = 0; i < convertedLength; i++) {
-            byte[] extracted = extractBytes(src, i * 4, 4);
-            converted[i] = java.nio.ByteBuffer.wrap(extracted).order(byteOrder).getInt();
+    private FileNameHash computeHashes(String name) {
+        int offset1 = 0x7FED7FED;
+        int offset2 = 0xEEEEEEEE;
+        int nameA1 = offset1;
+        int nameA2 = offset2;
+        int nameB1 = offset1;
+        int nameB2 = offset2;
+        int key1 = offset1;
+        int key2 = offset2;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= ASCII_UPPER_TABLE.length) {
+                return computeHashesSlowly(name);
+            }
+            int ch = ASCII_UPPER_TABLE[c];
+            offset1 = (int) encryptionTable[(MPQ_HASH_TABLE_OFFSET * 0x100) + ch] ^ (offset1 + offset2);
+            offset2 = ch + offset1 + offset2 + (offset2 << 5) + 3;
+            nameA1 = (int) encryptionTable[(MPQ_HASH_NAME_A * 0x100) + ch] ^ (nameA1 + nameA2);
+            nameA2 = ch + nameA1 + nameA2 + (nameA2 << 5) + 3;
+            nameB1 = (int) encryptionTable[(MPQ_HASH_NAME_B * 0x100) + ch] ^ (nameB1 + nameB2);
+            nameB2 = ch + nameB1 + nameB2 + (nameB2 << 5) + 3;
+            if (ch == '\\') {
+                // The file key only covers the name after the last directory.
+                key1 = 0x7FED7FED;
+                key2 = 0xEEEEEEEE;
+            } else {
+                key1 = (int) encryptionTable[(MPQ_HASH_FILE_KEY * 0x100) + ch] ^ (key1 + key2);
+                key2 = ch + key1 + key2 + (key2 << 5) + 3;
+            }
         }
-        return converted;
+        return new FileNameHash(offset1, nameA1, nameB1, key1);
+    }
+
+    /**
+     * Hashes a name containing non-ASCII characters, which need
+     * full Unicode uppercasing.
+     *
+     * @param name File name to hash
+     * @return Hashes of the name
+     */
+    private FileNameHash computeHashesSlowly(String name) {
+        String baseName = name.substring(1 + Math.max(name.lastIndexOf('\\'), name.lastIndexOf('/')));
+        return new FileNameHash(hashAsInt(name, MPQ_HASH_TABLE_OFFSET),
+                hashAsInt(name, MPQ_HASH_NAME_A),
+                hashAsInt(name, MPQ_HASH_NAME_B),
+                hashAsInt(baseName, MPQ_HASH_FILE_KEY));
+    }
+
+    public NameHashCache getNameHashCache() {
+        return nameHashCache;
+    }
+
+    /**
+     * Sets the cache used by hashAll.
+     *
+     * @param nameHashCache Name hash cache, or null to disable caching
+     */
+    public void setNameHashCache(NameHashCache nameHashCache) {
+        this.nameHashCache = nameHashCache;
     }
 
     /**
@@ -160,7 +269,7 @@ public final class FrostSecurity implements IStormCrypt {
         int[] encryptedArray = new int[len];
         int seed = INITIAL_ENCRYPT_SEED;
         for (int i = 0; i < len; i++) {
-            seed += encryptionTable[getLookupIndexEncrypt(key)];
+            seed += cryptTable[key & 0xFF];
             int base = key + seed;
             int current = src[i];
             int res = current ^ base;
@@ -179,9 +288,7 @@ public final class FrostSecurity implements IStormCrypt {
      * @return Encrypted integer
      */
     public int encrypt(int src, int key) {
-        int[] srcArray = new int[1];
-        srcArray[0] = src;
-        return encrypt(srcArray, key)[0];
+        return src ^ (key + INITIAL_ENCRYPT_SEED + cryptTable[key & 0xFF]);
     }
 
     /**
@@ -192,9 +299,7 @@ public final class FrostSecurity implements IStormCrypt {
      * @return Decrypted integer
      */
     public int decrypt(int src, int key) {
-        int[] srcArray = new int[1];
-        srcArray[0] = src;
-        return decrypt(srcArray, key)[0];
+        return src ^ (key + INITIAL_ENCRYPT_SEED + cryptTable[key & 0xFF]);
     }
 
     /**
@@ -213,7 +318,7 @@ public final class FrostSecurity implements IStormCrypt {
         int[] decryptedArray = new int[len];
         int seed = INITIAL_ENCRYPT_SEED;
         for (int i = 0; i < len; i++) {
-            seed += encryptionTable[getLookupIndexEncrypt(key)];
+            seed += cryptTable[key & 0xFF];
             int base = key + seed;
             int currentValue = src[i];
             int decryptResult = currentValue ^ base;
@@ -225,26 +330,161 @@ public final class FrostSecurity implements IStormCrypt {
     }
 
     /**
-     * Converts integer array into byte equivalent
-     * With the byte array length = ints len * 4
+     * Decrypts bytes in place using the Storm algorithm.
+     * Each four bytes (0-3, 4-7, etc) are treated as one integer.
+     * Trailing bytes that cannot fit into an integer are left as-is.
      *
-     * @param ar Origin int array
-     * @return Result bytes array
+     * @param buf Bytes to decrypt
+     * @param off Offset of the first byte
+     * @param len Number of bytes
+     * @param key Key to decrypt with
      */
-    private byte[] intArrayToBytes(int[] ar) {
-        int len = ar.length * 4; // 32 bit ints
-        byte[] data = new byte[len];
-        for (int i = 0; i < len; i += 4) {
-            byte[] bytes = ByteBuffer.allocate(4).putInt(ar[i / 4]).order(byteOrder).array();
-            for (int j = 3; j >= 0; j--) {
-                data[i + (3 - j)] = bytes[j];
-            }
+    @Override
+    public void decrypt(byte[] buf, int off, int len, int key) {
+        boolean littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+        int seed = INITIAL_ENCRYPT_SEED;
+        int end = off + (len & ~3);
+        for (int i = off; i < end; i += 4) {
+            seed += cryptTable[key & 0xFF];
+            int value = getInt(buf, i, littleEndian) ^ (key + seed);
+            key = (~key << 21) + 0x11111111 | key >>> 11;
+            seed = value + seed + (seed << 5) + 3;
+            putInt(buf, i, value, littleEndian);
+        }
+    }
+
+    /**
+     * Encrypts bytes in place using the Storm algorithm.
+     * Each four bytes (0-3, 4-7, etc) are treated as one integer.
+     * Trailing bytes that cannot fit into an integer are left as-is.
+     *
+     * @param buf Bytes to encrypt
+     * @param off Offset of the first byte
+     * @param len Number of bytes
+     * @param key Key to encrypt with
+     */
+    @Override
+    public void encrypt(byte[] buf, int off, int len, int key) {
+        boolean littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+        int seed = INITIAL_ENCRYPT_SEED;
+        int end = off + (len & ~3);
+        for (int i = off; i < end; i += 4) {
+            seed += cryptTable[key & 0xFF];
+            int value = getInt(buf, i, littleEndian);
+            putInt(buf, i, value ^ (key + seed), littleEndian);
+            key = (~key << 21) + 0x11111111 | key >>> 11;
+            seed = value + seed + (seed << 5) + 3;
         }
-        return data;
     }
 
     /**
-     * Generically encrypts/decrypts bytes.
+     * Decrypts part of a buffer in place using the Storm algorithm.
+     * The buffer's position, limit and byte order are not changed.
+     *
+     * @param buf Buffer to decrypt
+     * @param off Absolute index of the first byte
+     * @param len Number of bytes
+     * @param key Key to decrypt with
+     */
+    @Override
+    public void decrypt(ByteBuffer buf, int off, int len, int key) {
+        if (buf.hasArray()) {
+            decrypt(buf.array(), buf.arrayOffset() + off, len, key);
+            return;
+        }
+        IntBuffer words = wordView(buf, off, len);
+        int seed = INITIAL_ENCRYPT_SEED;
+        for (int i = 0; i < words.limit(); i++) {
+            seed += cryptTable[key & 0xFF];
+            int value = words.get(i) ^ (key + seed);
+            key = (~key << 21) + 0x11111111 | key >>> 11;
+            seed = value + seed + (seed << 5) + 3;
+            words.put(i, value);
+        }
+    }
+
+    /**
+     * Encrypts part of a buffer in place using the Storm algorithm.
+     * The buffer's position, limit and byte order are not changed.
+     *
+     * @param buf Buffer to encrypt
+     * @param off Absolute index of the first byte
+     * @param len Number of bytes
+     * @param key Key to encrypt with
+     */
+    @Override
+    public void encrypt(ByteBuffer buf, int off, int len, int key) {
+        if (buf.hasArray()) {
+            encrypt(buf.array(), buf.arrayOffset() + off, len, key);
+            return;
+        }
+        IntBuffer words = wordView(buf, off, len);
+        int seed = INITIAL_ENCRYPT_SEED;
+        for (int i = 0; i < words.limit(); i++) {
+            seed += cryptTable[key & 0xFF];
+            int value = words.get(i);
+            words.put(i, value ^ (key + seed));
+            key = (~key << 21) + 0x11111111 | key >>> 11;
+            seed = value + seed + (seed << 5) + 3;
+        }
+    }
+
+    /**
+     * Views whole integers of a buffer region in this byte order.
+     *
+     * @param buf Source buffer
+     * @param off Absolute index of the first byte
+     * @param len Number of bytes
+     * @return Integer view over the region
+     */
+    private IntBuffer wordView(ByteBuffer buf, int off, int len) {
+        ByteBuffer region = buf.duplicate();
+        ((Buffer) region).limit(off + len);
+        ((Buffer) region).position(off);
+        return region.slice().order(byteOrder).asIntBuffer();
+    }
+
+    /**
+     * Reads an integer from four bytes.
+     *
+     * @param buf          Source bytes
+     * @param i            Index of the first byte
+     * @param littleEndian Whether the lowest byte comes first
+     * @return Integer value
+     */
+    private static int getInt(byte[] buf, int i, boolean littleEndian) {
+        if (littleEndian) {
+            return (buf[i] & 0xFF) | (buf[i + 1] & 0xFF) << 8
+                    | (buf[i + 2] & 0xFF) << 16 | buf[i + 3] << 24;
+        }
+        return buf[i] << 24 | (buf[i + 1] & 0xFF) << 16
+                | (buf[i + 2] & 0xFF) << 8 | (buf[i + 3] & 0xFF);
+    }
+
+    /**
+     * Writes an integer into four bytes.
+     *
+     * @param buf          Target bytes
+     * @param i            Index of the first byte
+     * @param value        Integer value
+     * @param littleEndian Whether the lowest byte comes first
+     */
+    private static void putInt(byte[] buf, int i, int value, boolean littleEndian) {
+        if (littleEndian) {
+            buf[i] = (byte) value;
+            buf[i + 1] = (byte) (value >>> 8);
+            buf[i + 2] = (byte) (value >>> 16);
+            buf[i + 3] = (byte) (value >>> 24);
+        } else {
+            buf[i] = (byte) (value >>> 24);
+            buf[i + 1] = (byte) (value >>> 16);
+            buf[i + 2] = (byte) (value >>> 8);
+            buf[i + 3] = (byte) value;
+        }
+    }
+
+    /**
+     * Generically encrypts/decrypts a copy of the bytes.
      *
      * @param src           Source bytes array
      * @param key           Key to decrypt with
@@ -256,27 +496,15 @@ public final class FrostSecurity implements IStormCrypt {
         if (src == null) {
             return null;
         }
-        byte[] endBuffer;
-        // Grab whatever cannot fit into ints
-        int endBufferLength = src.length % 4;
-        endBuffer = new byte[endBufferLength];
-        for (int i = 0; i < endBufferLength; i++) {
-            endBuffer[i] = src[src.length - (i + 1)];
-        }
-
-        // First, convert the byte array into an integer array that can
-        // be used for the interface of Storm crypto
-        int[] convertedNumericValues = transform(src);
-        int[] modified = null;
+        byte[] modified = Arrays.copyOf(src, src.length);
         if (operationType == OperationType.ENCRYPT) {
-            modified = encrypt(convertedNumericValues, key);
+            encrypt(modified, 0, modified.length, key);
         } else if (operationType == OperationType.DECRYPT) {
-            modified = decrypt(convertedNumericValues, key);
+            decrypt(modified, 0, modified.length, key);
         } else {
             throw new EncryptionException("Unknown frost type: " + operationType.name());
         }
-        // Cast back into byte array
-        return ByteHelper.combineBytes(intArrayToBytes(modified), endBuffer);
+        return modified;
     }
 
     /**
@@ -341,14 +569,4 @@ public final class FrostSecurity implements IStormCrypt {
     public ByteBuffer encryptBuffer(ByteBuffer src, int key) {
         return ByteBuffer.wrap(encryptBytes(src.array(), key)).order(byteOrder);
     }
-
-    /**
-     * Gets the array index for this key.
-     *
-     * @param key Key value
-     * @return Array index to lookup
-     */
-    private int getLookupIndexEncrypt(int key) {
-        return (0x400 + (key & 0xFF)) % encryptionTable.length;
-    }
 }
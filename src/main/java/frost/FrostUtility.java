@@ -1,5 +1,6 @@
 package frost;
 
+import custom.PgProtectionRemover;
 import model.HashTable;
 import model.HashTableEntry;
 import settings.MpqContext;
@@ -13,10 +14,12 @@ public final class FrostUtility {
 
     private FrostSecurity frostSecurity;
     private MpqContext context;
+    private PgProtectionRemover pgProtectionRemover;
 
     public FrostUtility(FrostSecurity frostSecurity, MpqContext context) {
         this.frostSecurity = frostSecurity;
         this.context = context;
+        this.pgProtectionRemover = new PgProtectionRemover();
     }
 
     /**
@@ -29,25 +32,11 @@ public final class FrostUtility {
      * @return Hash table entry, or null if not exists.
      */
     public HashTableEntry findEntry(HashTable hashTable, String fileName, short lang, short platform) {
-        try {
-            // Calculate hashes and find entry
-            int hashA = frostSecurity.hashAsInt(fileName, MPQ_HASH_NAME_A);
-            int hashB = frostSecurity.hashAsInt(fileName, MPQ_HASH_NAME_B);
-            for(HashTableEntry currentEntry : hashTable.getEntries()) {
-                if (currentEntry.getFileBlockIndex() != FrostConstants.MPQ_HASH_ENTRY_DELETED) {
-                    if (currentEntry.getFilePathHashA() == hashA && currentEntry.getFilePathHashB() == hashB) {
-                        if (currentEntry.getPlatform() == platform || platform == ANY_PLATFORM) {
-                            if (currentEntry.getLanguage() == lang || lang == ANY_LANGUAGE) {
-                                return currentEntry;
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception ex) {
-            context.getLogger().warn("Failed to hash " + fileName + " due to: " + ex.getMessage());
+        List<HashTableEntry> entries = locateEntries(hashTable, fileName, lang, platform, true);
+        if (entries == null || entries.isEmpty()) {
+            return null;
         }
-        return null;
+        return entries.get(0);
     }
 
     /**
@@ -63,23 +52,69 @@ public final class FrostUtility {
         return this.findEntry(hashTable, fileName, lang, platform) != null;
     }
 
+    /**
+     * Finds all hash table entries for file name.
+     *
+     * @param hashTable Hash table to look through
+     * @param fileName  File name to look for
+     * @param lang      Language to look for (or ANY_LANGUAGE for any)
+     * @param platform  Platform to look for (or ANY_PLATFORM for any)
+     * @return List of matching entries, or null if the name could not be hashed.
+     */
     public List<HashTableEntry> findEntries(HashTable hashTable, String fileName, short lang, short platform) {
+        return locateEntries(hashTable, fileName, lang, platform, false);
+    }
+
+    /**
+     * Locates hash table entries for the file name.
+     * Follows the same probe sequence as Storm: starts at the slot given
+     * by the table offset hash and walks forward until an empty slot.
+     * Hash tables that are not a power of two in size (PG protection)
+     * can't be probed this way, so they fall back to a full scan.
+     *
+     * @param hashTable Hash table to look through
+     * @param fileName  File name to look for
+     * @param lang      Language to look for (or ANY_LANGUAGE for any)
+     * @param platform  Platform to look for (or ANY_PLATFORM for any)
+     * @param firstOnly True to stop at the first match
+     * @return List of matching entries, or null if the name could not be hashed.
+     */
+    private List<HashTableEntry> locateEntries(HashTable hashTable, String fileName, short lang,
+                                               short platform, boolean firstOnly) {
         try {
             List<HashTableEntry> entries = new ArrayList<>();
-            // todo fix code duplication
+            int size = (int) hashTable.size();
+            if (size == 0) {
+                return entries;
+            }
             // Calculate hashes and find entry
-            int hashA = frostSecurity.hashAsInt(fileName, MPQ_HASH_NAME_A);
-            int hashB = frostSecurity.hashAsInt(fileName, MPQ_HASH_NAME_B);
-            for(HashTableEntry currentEntry : hashTable.getEntries()) {
-                if (currentEntry.getFileBlockIndex() != FrostConstants.MPQ_HASH_ENTRY_DELETED) {
-                    if (currentEntry.getFilePathHashA() == hashA && currentEntry.getFilePathHashB() == hashB) {
-                        if (currentEntry.getPlatform() == platform || platform == ANY_PLATFORM) {
-                            if (currentEntry.getLanguage() == lang || lang == ANY_LANGUAGE) {
-                                entries.add(currentEntry);
-                            }
+            FileNameHash hash = frostSecurity.hashAll(fileName);
+            int hashA = hash.getNameA();
+            int hashB = hash.getNameB();
+            if (pgProtectionRemover.pgProtectionChecker(size)) {
+                for (int slot = 0; slot < size; slot++) {
+                    if (matches(hashTable, slot, hashA, hashB, lang, platform)) {
+                        entries.add(hashTable.get(slot));
+                        if (firstOnly) {
+                            break;
                         }
                     }
                 }
+                return entries;
+            }
+            int start = hash.getTableOffset() & (size - 1);
+            for (int i = 0; i < size; i++) {
+                int slot = (start + i) & (size - 1);
+                if (hashTable.getFileBlockIndex(slot) == MPQ_HASH_ENTRY_EMPTY) {
+                    // End of the probe chain
+                    break;
+                }
+                if (matches(hashTable, slot, hashA, hashB, lang, platform)) {
+                    entries.add(hashTable.get(slot));
+                    if (firstOnly) {
+                        break;
+                    }
+                }
             }
             return entries;
         } catch (Exception ex) {
@@ -87,4 +122,22 @@ public final class FrostUtility {
         }
         return null;
     }
+
+    /**
+     * Determines if a hash table slot is a live entry for these hashes.
+     *
+     * @param hashTable Hash table
+     * @param slot      Slot to check
+     * @param hashA     Name hash A
+     * @param hashB     Name hash B
+     * @param lang      Language to look for (or ANY_LANGUAGE for any)
+     * @param platform  Platform to look for (or ANY_PLATFORM for any)
+     * @return True if the entry matches
+     */
+    private boolean matches(HashTable hashTable, int slot, int hashA, int hashB, short lang, short platform) {
+        return hashTable.getFileBlockIndex(slot) != MPQ_HASH_ENTRY_DELETED
+                && hashTable.getFilePathHashA(slot) == hashA && hashTable.getFilePathHashB(slot) == hashB
+                && (hashTable.getPlatform(slot) == platform || platform == ANY_PLATFORM)
+                && (hashTable.getLanguage(slot) == lang || lang == ANY_LANGUAGE);
+    }
 }
@@ -0,0 +1,279 @@
+package frost;
+
+import custom.PgProtectionRemover;
+import model.HashTable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static frost.FrostConstants.MPQ_HASH_ENTRY_DELETED;
+import static frost.FrostConstants.MPQ_HASH_ENTRY_EMPTY;
+
+/**
+ * Resolves the names of hash table entries from a listfile.
+ * <p>
+ * Every name is hashed once when it is added and stored in a
+ * map keyed by (hashA << 32 | hashB). Resolving a hash table is
+ * then a single pass over its entries with one map lookup each,
+ * so one resolver can name the files of any number of archives
+ * without hashing the listfile again.
+ * <p>
+ * Adding names is not thread safe. Once loaded, a resolver may
+ * resolve many hash tables concurrently.
+ */
+public final class ListfileResolver {
+
+    private static final float MAX_LOAD = 0.5f;
+
+    private final FrostSecurity frostSecurity;
+    private final PgProtectionRemover pgProtectionRemover;
+
+    /* Names, and the table offset hash of each name. */
+    private final List<String> names;
+    private int[] tableOffsets;
+
+    /* Open addressing map of name hashes to an index into names. */
+    private long[] keys;
+    private int[] indices;
+    private int mask;
+
+    /**
+     * Creates an empty resolver.
+     */
+    public ListfileResolver() {
+        this(new FrostSecurity());
+    }
+
+    /**
+     * Creates an empty resolver that hashes with the provided module.
+     *
+     * @param frostSecurity Hashing module
+     */
+    public ListfileResolver(FrostSecurity frostSecurity) {
+        this.frostSecurity = frostSecurity;
+        this.pgProtectionRemover = new PgProtectionRemover();
+        this.names = new ArrayList<>();
+        this.tableOffsets = new int[16];
+        allocate(16);
+    }
+
+    /**
+     * Creates a resolver containing every line of a listfile.
+     *
+     * @param listfile Newline delimited listfile on disk
+     * @throws IOException If the listfile can't be read
+     */
+    public ListfileResolver(File listfile) throws IOException {
+        this();
+        addListfile(listfile);
+    }
+
+    /**
+     * Adds every line of a listfile.
+     *
+     * @param listfile Newline delimited listfile on disk
+     * @return Number of names added
+     * @throws IOException If the listfile can't be read
+     */
+    public int addListfile(File listfile) throws IOException {
+        int added = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(listfile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (add(line)) {
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Adds a name to the resolver.
+     * Empty names and names whose hashes are already present are skipped.
+     *
+     * @param name File name
+     * @return True if the name was added
+     */
+    public boolean add(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        FileNameHash hash = frostSecurity.hashAll(name);
+        long key = key(hash.getNameA(), hash.getNameB());
+        int slot = slot(key);
+        while (indices[slot] >= 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int index = names.size();
+        names.add(name);
+        if (index == tableOffsets.length) {
+            tableOffsets = Arrays.copyOf(tableOffsets, index * 2);
+        }
+        tableOffsets[index] = hash.getTableOffset();
+        keys[slot] = key;
+        indices[slot] = index;
+        if (names.size() > keys.length * MAX_LOAD) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Looks up the name with these hashes.
+     *
+     * @param hashA Name hash A
+     * @param hashB Name hash B
+     * @return File name, or null if no added name has these hashes
+     */
+    public String resolve(int hashA, int hashB) {
+        int index = indexOf(key(hashA, hashB));
+        return index < 0 ? null : names.get(index);
+    }
+
+    /**
+     * Finds the names of every live entry in a hash table.
+     * A name is only returned if a lookup by name would find its
+     * entry, so every returned name can be read from the archive.
+     *
+     * @param hashTable Hash table to resolve
+     * @return Names of the files in the hash table
+     */
+    public Set<String> resolve(HashTable hashTable) {
+        Set<String> resolved = new LinkedHashSet<>();
+        int size = (int) hashTable.size();
+        if (size == 0 || names.isEmpty()) {
+            return resolved;
+        }
+        // Protected tables are searched by a full scan, so every entry can be found.
+        boolean probed = !pgProtectionRemover.pgProtectionChecker(size);
+        int[] chainStarts = probed ? chainStarts(hashTable, size) : null;
+        for (int i = 0; i < size; i++) {
+            int blockIndex = hashTable.getFileBlockIndex(i);
+            if (blockIndex == MPQ_HASH_ENTRY_EMPTY || blockIndex == MPQ_HASH_ENTRY_DELETED) {
+                continue;
+            }
+            int index = indexOf(key(hashTable.getFilePathHashA(i), hashTable.getFilePathHashB(i)));
+            if (index < 0) {
+                continue;
+            }
+            if (probed && !isReachable(i, tableOffsets[index] & (size - 1), chainStarts[i], size)) {
+                continue;
+            }
+            resolved.add(names.get(index));
+        }
+        return resolved;
+    }
+
+    /**
+     * Number of names in the resolver.
+     *
+     * @return Name count
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * For each slot, finds where its probe chain begins: the slot just
+     * after the nearest empty slot before it (wrapping around).
+     * Slots in a table with no empty slots are all reachable, which is
+     * marked by -1.
+     *
+     * @param hashTable Hash table
+     * @param size      Hash table size (a power of two)
+     * @return Chain start of each slot
+     */
+    private static int[] chainStarts(HashTable hashTable, int size) {
+        int[] starts = new int[size];
+        int lastEmpty = -1;
+        for (int i = size - 1; i >= 0 && lastEmpty < 0; i--) {
+            if (hashTable.getFileBlockIndex(i) == MPQ_HASH_ENTRY_EMPTY) {
+                lastEmpty = i;
+            }
+        }
+        if (lastEmpty < 0) {
+            Arrays.fill(starts, -1);
+            return starts;
+        }
+        int chainStart = (lastEmpty + 1) & (size - 1);
+        for (int n = 1; n <= size; n++) {
+            int i = (lastEmpty + n) & (size - 1);
+            if (hashTable.getFileBlockIndex(i) == MPQ_HASH_ENTRY_EMPTY) {
+                chainStart = (i + 1) & (size - 1);
+            }
+            starts[i] = chainStart;
+        }
+        return starts;
+    }
+
+    /**
+     * Determines if a probe starting at one slot reaches another
+     * before hitting an empty slot.
+     *
+     * @param slot       Slot of the entry
+     * @param start      First slot probed for the name
+     * @param chainStart First slot of the chain containing the entry
+     * @param size       Hash table size (a power of two)
+     * @return True if the probe reaches the entry
+     */
+    private static boolean isReachable(int slot, int start, int chainStart, int size) {
+        if (chainStart < 0) {
+            return true;
+        }
+        return ((slot - start) & (size - 1)) <= ((slot - chainStart) & (size - 1));
+    }
+
+    private static long key(int hashA, int hashB) {
+        return ((long) hashA << 32) | (hashB & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int indexOf(long key) {
+        int slot = slot(key);
+        while (indices[slot] >= 0) {
+            if (keys[slot] == key) {
+                return indices[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        indices = new int[capacity];
+        Arrays.fill(indices, -1);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldIndices = indices;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldIndices[i] >= 0) {
+                int slot = slot(oldKeys[i]);
+                while (indices[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                indices[slot] = oldIndices[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package frost;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of file name hashes.
+ * <p>
+ * One cache can be shared by every archive opened with the same
+ * settings, so resolving the same listfile against many archives
+ * hashes each name only once.
+ */
+public final class NameHashCache {
+
+    private final int capacity;
+    private final LinkedHashMap<String, FileNameHash> hashes;
+
+    /**
+     * Creates a name hash cache.
+     *
+     * @param capacity Maximum number of names to hold
+     */
+    public NameHashCache(int capacity) {
+        this.capacity = capacity;
+        // Access order makes the eldest entry the least recently used.
+        this.hashes = new LinkedHashMap<String, FileNameHash>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileNameHash> eldest) {
+                return size() > NameHashCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up the hashes of a name.
+     *
+     * @param name File name
+     * @return Cached hashes, or null if the name isn't cached
+     */
+    public synchronized FileNameHash get(String name) {
+        return hashes.get(name);
+    }
+
+    /**
+     * Caches the hashes of a name, evicting the least
+     * recently used name if the cache is full.
+     *
+     * @param name File name
+     * @param hash Hashes of the name
+     */
+    public synchronized void put(String name, FileNameHash hash) {
+        hashes.put(name, hash);
+    }
+
+    /**
+     * Number of names currently cached.
+     *
+     * @return Cached name count
+     */
+    public synchronized int size() {
+        return hashes.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
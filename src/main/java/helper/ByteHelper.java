@@ -22,14 +22,27 @@ public final class ByteHelper {
                     "on source array (length = " + src.length + ")");
         }
         byte[] extracted = new byte[len];
-        int pos = 0;
-        for (int i = start; i < start + len; i++) {
-            extracted[pos] = src[i];
-            pos++;
-        }
+        System.arraycopy(src, start, extracted, 0, len);
         return extracted;
     }
 
+    /**
+     * Wraps part of a byte array without copying it.
+     * The buffer shares the array, so changes to either are visible in both.
+     *
+     * @param src   Source byte array
+     * @param start Start position of the slice
+     * @param len   Length of the slice
+     * @return Little endian buffer over src[start, start + len)
+     */
+    public static ByteBuffer slice(byte[] src, int start, int len) {
+        if (start < 0 || len < 0 || start + len > src.length) {
+            throw new IllegalArgumentException("Start + len is out of range " +
+                    "on source array (length = " + src.length + ")");
+        }
+        return ByteBuffer.wrap(src, start, len).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     /**
      * Converts a 4-byte array into an int32
      *
@@ -56,6 +69,25 @@ public final class ByteHelper {
         return byteToInt(src, ByteOrder.LITTLE_ENDIAN);
     }
 
+    /**
+     * Reads an int32 from a byte array without copying it.
+     *
+     * @param src       Source array
+     * @param offset    Position of the first byte
+     * @param byteOrder Byte order
+     * @return Integer result
+     */
+    public static int byteToInt(byte[] src, int offset, ByteOrder byteOrder) {
+        int b0 = src[offset] & 0xFF;
+        int b1 = src[offset + 1] & 0xFF;
+        int b2 = src[offset + 2] & 0xFF;
+        int b3 = src[offset + 3] & 0xFF;
+        if (byteOrder == ByteOrder.LITTLE_ENDIAN) {
+            return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+        }
+        return (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+    }
+
     /**
      * Converts a 2-byte array into an int16
      *
@@ -82,6 +114,23 @@ public final class ByteHelper {
         return byteToShort(src, ByteOrder.LITTLE_ENDIAN);
     }
 
+    /**
+     * Reads an int16 from a byte array without copying it.
+     *
+     * @param src       Source array
+     * @param offset    Position of the first byte
+     * @param byteOrder Byte order
+     * @return Short result
+     */
+    public static short byteToShort(byte[] src, int offset, ByteOrder byteOrder) {
+        int b0 = src[offset] & 0xFF;
+        int b1 = src[offset + 1] & 0xFF;
+        if (byteOrder == ByteOrder.LITTLE_ENDIAN) {
+            return (short) (b0 | (b1 << 8));
+        }
+        return (short) ((b0 << 8) | b1);
+    }
+
     /**
      * Trims bytes off the beginning of the data.
      *
@@ -91,9 +140,7 @@ public final class ByteHelper {
      */
     public static byte[] trimBytes(byte[] rawData, int offset) {
         byte[] newBytes = new byte[rawData.length - offset];
-        for (int i = offset; i < rawData.length; i++) {
-            newBytes[i - offset] = rawData[i];
-        }
+        System.arraycopy(rawData, offset, newBytes, 0, newBytes.length);
         return newBytes;
     }
 
@@ -107,12 +154,27 @@ public final class ByteHelper {
     public static byte[] combineBytes(byte[] originalBytes, byte[] toAppend) {
         int totalLength = originalBytes.length + toAppend.length;
         byte[] newBytes = new byte[totalLength];
-        for (int i = 0; i < originalBytes.length; i++) {
-            newBytes[i] = originalBytes[i];
-        }
-        for (int i = 0; i < toAppend.length; i++) {
-            newBytes[i + originalBytes.length] = toAppend[i];
-        }
+        System.arraycopy(originalBytes, 0, newBytes, 0, originalBytes.length);
+        System.arraycopy(toAppend, 0, newBytes, originalBytes.length, toAppend.length);
+        return newBytes;
+    }
+
+    /**
+     * Combines parts of two byte arrays together
+     *
+     * @param originalBytes  Byte array (part 1)
+     * @param originalOffset Start of part 1
+     * @param originalLength Length of part 1
+     * @param toAppend       Byte array (part 2 to add)
+     * @param appendOffset   Start of part 2
+     * @param appendLength   Length of part 2
+     * @return Result array, part 1 + part 2
+     */
+    public static byte[] combineBytes(byte[] originalBytes, int originalOffset, int originalLength,
+                                      byte[] toAppend, int appendOffset, int appendLength) {
+        byte[] newBytes = new byte[originalLength + appendLength];
+        System.arraycopy(originalBytes, originalOffset, newBytes, 0, originalLength);
+        System.arraycopy(toAppend, appendOffset, newBytes, originalLength, appendLength);
         return newBytes;
     }
 
@@ -0,0 +1,57 @@
+package helper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper functions for file channel operations.
+ */
+public final class ChannelHelper {
+
+    /**
+     * Writes all of the buffers to the channel, back to back, starting
+     * at the specified position. Uses a single gathering write when the
+     * channel accepts everything at once.
+     *
+     * @param channel  Channel to write to
+     * @param position Position in the file of the first byte
+     * @param buffers  Buffers to write, in order
+     * @throws IOException If the channel can't be written to.
+     */
+    public static void writeFully(FileChannel channel, long position, ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        channel.position(position);
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Copies a region of one file into another with FileChannel.transferTo,
+     * which lets the operating system copy the bytes without passing
+     * them through the heap.
+     *
+     * @param source         Channel to copy from
+     * @param sourcePosition First byte to copy
+     * @param count          Number of bytes to copy
+     * @param target         Channel to copy into
+     * @param targetPosition Position in the target of the first byte
+     * @throws IOException If either channel fails.
+     */
+    public static void transferFully(FileChannel source, long sourcePosition, long count,
+                                     FileChannel target, long targetPosition) throws IOException {
+        target.position(targetPosition);
+        while (count > 0) {
+            long transferred = source.transferTo(sourcePosition, count, target);
+            if (transferred <= 0) {
+                throw new IOException("Source ended " + count + " bytes early at " + sourcePosition);
+            }
+            sourcePosition += transferred;
+            count -= transferred;
+        }
+    }
+}
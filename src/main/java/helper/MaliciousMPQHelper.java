@@ -1,6 +1,6 @@
 package helper;
 
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import frost.FrostConstants;
 
 import static frost.FrostConstants.MPQ_HASH_ENTRY_DELETED;
@@ -43,7 +43,7 @@ public final class MaliciousMPQHelper {
      * @return Valid archive size
      */
     public static int fixArchiveSize(int originalArchiveSize,
-                                     BinaryReader reader, int headerOffset) {
+                                     IArchiveReader reader, int headerOffset) {
         int availableSize = reader.getSize() - headerOffset;
         if (availableSize >= originalArchiveSize) {
             return originalArchiveSize;
@@ -0,0 +1,117 @@
+package interfaces;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access reader over the bytes of an MPQ archive.
+ * All multi-byte values are read as little endian.
+ */
+public interface IArchiveReader extends Closeable {
+
+    /**
+     * Moves the reader to the specified position.
+     *
+     * @param position  Byte position from the start of the source
+     */
+    void position(int position);
+
+    /**
+     * Gets the current position of the reader.
+     *
+     * @return  Byte position from the start of the source
+     */
+    int getPosition();
+
+    /**
+     * Gets the total size of the source.
+     *
+     * @return  Size in bytes
+     */
+    int getSize();
+
+    /**
+     * Reads bytes from the current position and advances past them.
+     *
+     * @param length    Number of bytes to read
+     * @return          Copy of the bytes
+     */
+    byte[] readBytes(int length);
+
+    /**
+     * Copies bytes from a position without moving the reader,
+     * so many threads may call this at once.
+     *
+     * @param position  Byte position from the start of the source
+     * @param length    Number of bytes to read
+     * @return          Copy of the bytes
+     */
+    byte[] readBytes(int position, int length);
+
+    /**
+     * Reads an int32 from the current position.
+     *
+     * @return  Integer value
+     */
+    int readInt();
+
+    /**
+     * Reads an unsigned int16 from the current position.
+     *
+     * @return  Short value, as an unsigned int
+     */
+    int readShort();
+
+    /**
+     * Reads an int64 from the current position.
+     *
+     * @return  Long value
+     */
+    long readLong();
+
+    /**
+     * Reads a fixed length ASCII String from the current position.
+     *
+     * @param length    Number of bytes to read
+     * @return          String value
+     */
+    String readString(int length);
+
+    /**
+     * Moves the reader to the next occurrence of this byte sequence,
+     * starting from the current position.
+     *
+     * @param sequence  Bytes to search for
+     */
+    void goTo(byte[] sequence);
+
+    /**
+     * Returns a read-only view of a region of the source without copying it.
+     * Does not move the reader. The view must not be used after the
+     * reader is closed.
+     *
+     * @param position  Byte position from the start of the source
+     * @param length    Number of bytes in the view
+     * @return          Little endian view of the region
+     */
+    ByteBuffer slice(int position, int length);
+
+    /**
+     * Opens a channel over the file behind this reader, so that regions
+     * can be copied with FileChannel.transferTo instead of through memory.
+     * The caller must close the channel.
+     *
+     * @return          Read-only channel, or null if there is no file
+     * @throws IOException  If the file can't be opened.
+     */
+    FileChannel openChannel() throws IOException;
+
+    /**
+     * Releases the source, so that its file can be replaced.
+     * Reading after this fails.
+     */
+    @Override
+    void close();
+}
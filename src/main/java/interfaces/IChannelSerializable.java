@@ -0,0 +1,20 @@
+package interfaces;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Represents a class that can write itself straight to a file channel,
+ * without first building all of its bytes in memory.
+ */
+public interface IChannelSerializable {
+
+    /**
+     * Writes the bytes which represent the state of this object
+     * to the channel. Positions are absolute within the file.
+     *
+     * @param channel   Channel to write to
+     * @throws IOException  If the channel can't be written to.
+     */
+    void writeTo(FileChannel channel) throws IOException;
+}
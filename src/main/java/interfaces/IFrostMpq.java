@@ -1,6 +1,11 @@
 package interfaces;
 
+import frost.ListfileResolver;
+
 import java.io.File;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 public interface IFrostMpq {
@@ -13,6 +18,36 @@ public interface IFrostMpq {
      */
      boolean fileExists(String fileName);
 
+    /**
+     * Retrieves the uncompressed bytes of a file in the archive.
+     * Safe to call from many threads on the same archive.
+     *
+     * @param fileName File name in archive
+     * @return File data
+     */
+    byte[] getFileBytes(String fileName);
+
+    /**
+     * Reads a range of a file in the archive, decoding only the
+     * sectors that cover it. The range is cut short at the end of
+     * the file.
+     *
+     * @param fileName File name in archive
+     * @param offset   First byte to read
+     * @param length   Number of bytes to read
+     * @return File data in the range
+     */
+    byte[] read(String fileName, int offset, int length);
+
+    /**
+     * Opens a stream over a file in the archive. Sectors are decoded
+     * as they are reached, so only one sector is held in memory.
+     *
+     * @param fileName File name in archive
+     * @return Stream of file data
+     */
+    InputStream openStream(String fileName);
+
     /**
      * Extracts the file to the base directory, using the same filename.
      *
@@ -27,6 +62,15 @@ public interface IFrostMpq {
      */
      void addExternalListfile(File externalListfilePath);
 
+    /**
+     * Adds every name the resolver knows that exists in this archive
+     * to the known files.
+     *
+     * @param resolver Resolver loaded with candidate names
+     * @return Number of file names found in this archive
+     */
+    int addListfile(ListfileResolver resolver);
+
     /**
      * Retrieves a Set of the file names in the archive.
      * This set cannot be modified.
@@ -87,6 +131,12 @@ public interface IFrostMpq {
      */
     void save(File destination);
 
+    /**
+     * Saves changes into the file this MPQ was read from, without
+     * rewriting it. Only new files, the tables and the header are written.
+     */
+    void saveInPlace();
+
     /**
      * Imports this file into the archive.
      * Replaces if the file already exists.
@@ -96,6 +146,14 @@ public interface IFrostMpq {
      */
     void importFile(String name, byte[] data);
 
+    /**
+     * Imports many files into the archive at once.
+     * Replaces any files that already exist.
+     *
+     * @param files File names and their bytes
+     */
+    void importFiles(Map<String, byte[]> files);
+
     /**
      * Deletes a file from the archive.
      *
@@ -104,4 +162,12 @@ public interface IFrostMpq {
      *         returns false if the file didn't exist
      */
     boolean delete(String name);
+
+    /**
+     * Deletes many files from the archive at once.
+     *
+     * @param names  Filenames to delete
+     * @return Number of files deleted
+     */
+    int deleteFiles(Collection<String> names);
 }
@@ -1,6 +1,6 @@
 package interfaces;
 
-public interface IGenericCompression {
+public interface IGenericCompression extends IGenericDecompression {
 
     /**
      * Applies this compression type.
@@ -10,16 +10,4 @@ public interface IGenericCompression {
      */
     byte[] apply(byte[] src);
 
-    /**
-     * Reverses this compression type.
-     *
-     * @param src   Source (compressed) data
-     * @param dest  Array to write compressed data into
-     *              Depending on what compression type this is,
-     *              the array may need to be instantiated to the
-     *              size of the uncompressed data!
-     * @return      Uncompressed data
-     */
-    byte[] undo(byte[] src, byte[] dest);
-
 }
@@ -0,0 +1,61 @@
+package interfaces;
+
+import java.util.Arrays;
+
+/**
+ * Represents a compression type that can be undone.
+ * Types that can also be applied implement IGenericCompression.
+ */
+public interface IGenericDecompression {
+
+    /**
+     * Reverses this compression type.
+     *
+     * @param src   Source (compressed) data
+     * @param dest  Array to write compressed data into
+     *              Depending on what compression type this is,
+     *              the array may need to be instantiated to the
+     *              size of the uncompressed data!
+     * @return      Uncompressed data
+     */
+    byte[] undo(byte[] src, byte[] dest);
+
+    /**
+     * Reverses this compression type on part of an array.
+     * Implementations that can read the slice in place should
+     * override this; by default the slice is copied out first.
+     *
+     * @param src    Source array holding the compressed data
+     * @param offset Start of the compressed data in src
+     * @param length Length of the compressed data
+     * @param dest   Array to write uncompressed data into
+     * @return       Uncompressed data
+     */
+    default byte[] undo(byte[] src, int offset, int length, byte[] dest) {
+        if (offset == 0 && length == src.length) {
+            return undo(src, dest);
+        }
+        return undo(Arrays.copyOfRange(src, offset, offset + length), dest);
+    }
+
+    /**
+     * Reverses this compression type from part of an array into part of another.
+     * Implementations that can write into the slice directly should
+     * override this; by default the result is copied into it.
+     *
+     * @param src        Source array holding the compressed data
+     * @param offset     Start of the compressed data in src
+     * @param length     Length of the compressed data
+     * @param dest       Array to write uncompressed data into
+     * @param destOffset Start of the output in dest
+     * @param destLength Size of the uncompressed data
+     * @return           Number of bytes written to dest
+     */
+    default int undo(byte[] src, int offset, int length, byte[] dest, int destOffset, int destLength) {
+        byte[] result = undo(src, offset, length, new byte[destLength]);
+        int written = Math.min(result.length, destLength);
+        System.arraycopy(result, 0, dest, destOffset, written);
+        return written;
+    }
+
+}
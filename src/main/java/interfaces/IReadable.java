@@ -1,13 +1,11 @@
 package interfaces;
 
-import com.github.zachcloud.reader.BinaryReader;
-
 public interface IReadable {
 
     /**
-     * Reads from the binary reader into this model object
+     * Reads from the archive reader into this model object
      *
-     * @param reader    Binary reader
+     * @param reader    Archive reader
      */
-    void read(BinaryReader reader);
+    void read(IArchiveReader reader);
 }
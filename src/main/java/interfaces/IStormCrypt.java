@@ -76,4 +76,46 @@ public interface IStormCrypt {
      * @return      Encrypt bytes array
      */
     byte[] encryptBytes(byte[] src, int key);
+
+    /**
+     * Decrypts bytes in place using the Storm algorithm.
+     * Trailing bytes that cannot fit into an integer are left as-is.
+     *
+     * @param buf   Bytes to decrypt
+     * @param off   Offset of the first byte
+     * @param len   Number of bytes
+     * @param key   Key to decrypt with
+     */
+    void decrypt(byte[] buf, int off, int len, int key);
+
+    /**
+     * Encrypts bytes in place using the Storm algorithm.
+     * Trailing bytes that cannot fit into an integer are left as-is.
+     *
+     * @param buf   Bytes to encrypt
+     * @param off   Offset of the first byte
+     * @param len   Number of bytes
+     * @param key   Key to encrypt with
+     */
+    void encrypt(byte[] buf, int off, int len, int key);
+
+    /**
+     * Decrypts part of a buffer in place using the Storm algorithm.
+     *
+     * @param buf   Buffer to decrypt
+     * @param off   Absolute index of the first byte
+     * @param len   Number of bytes
+     * @param key   Key to decrypt with
+     */
+    void decrypt(ByteBuffer buf, int off, int len, int key);
+
+    /**
+     * Encrypts part of a buffer in place using the Storm algorithm.
+     *
+     * @param buf   Buffer to encrypt
+     * @param off   Absolute index of the first byte
+     * @param len   Number of bytes
+     * @param key   Key to encrypt with
+     */
+    void encrypt(ByteBuffer buf, int off, int len, int key);
 }
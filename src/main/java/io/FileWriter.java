@@ -1,8 +1,16 @@
 package io;
 
+import interfaces.IChannelSerializable;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 public class FileWriter {
 
@@ -25,4 +33,86 @@ public class FileWriter {
         writer.flush();
         writer.close();
     }
+
+    /**
+     * Writes an object to file through a FileChannel.
+     * The object is written to a temporary file next to the target,
+     * which then replaces the target. If writing fails, the target
+     * is left as it was.
+     *
+     * @param source Object to write
+     * @param file   File to write to
+     * @throws IOException If file cannot be written to.
+     */
+    public void writeFrom(IChannelSerializable source, File file) throws IOException {
+        Path temp = writeTemp(source, file);
+        try {
+            replace(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes an object to a temporary file next to the target, so that
+     * it can replace the target later. The caller deletes the file.
+     *
+     * @param source Object to write
+     * @param file   File the temporary file will replace
+     * @return Temporary file
+     * @throws IOException If the temporary file cannot be written to.
+     */
+    public Path writeTemp(IChannelSerializable source, File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        Path temp = File.createTempFile("." + file.getName() + "-", ".tmp", directory).toPath();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            source.writeTo(channel);
+            channel.force(true);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        return temp;
+    }
+
+    /**
+     * Replaces a file with a temporary file, atomically where the
+     * file system allows it.
+     *
+     * @param temp Temporary file from writeTemp
+     * @param file File to replace
+     * @throws IOException If the file cannot be replaced.
+     */
+    public void replace(Path temp, File file) throws IOException {
+        try {
+            Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Copies a temporary file over an existing file through a FileChannel,
+     * keeping the file itself. Only a fallback for when replace fails:
+     * unlike replace this is not atomic, and if it fails part way the
+     * file is left damaged.
+     *
+     * @param temp Temporary file from writeTemp
+     * @param file File to write over
+     * @throws IOException If the file cannot be written to.
+     */
+    public void writeOver(Path temp, File file) throws IOException {
+        try (FileChannel in = FileChannel.open(temp, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += out.transferFrom(in, position, size - position);
+            }
+            out.truncate(size);
+            out.force(true);
+        }
+    }
 }
@@ -0,0 +1,224 @@
+package io;
+
+import exception.MpqException;
+import interfaces.IArchiveReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Archive reader backed by a memory mapping of the archive file.
+ * <p>
+ * The file is never copied onto the heap as a whole; bytes are only
+ * copied out when they are requested, and slices are views into the
+ * mapping. The OS page cache backing the mapping is shared with any
+ * other process that has the same file open.
+ * <p>
+ * Closing the reader unmaps the file, so that it can be replaced.
+ * Copies out of the mapping hold a read lock that closing waits for,
+ * so no read touches the mapping once it is gone.
+ */
+public final class MappedArchiveReader implements IArchiveReader {
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final ReadWriteLock guard = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    private int position;
+
+    /**
+     * Maps the file as read-only.
+     * The channel is closed right away; the mapping stays valid until
+     * this reader is closed or garbage collected.
+     *
+     * @param file Archive file
+     * @throws IOException If the file can't be mapped.
+     */
+    public MappedArchiveReader(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new MpqException("Archive is too large to map: " + size + " bytes");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Reads from an existing buffer, such as an archive held in memory.
+     *
+     * @param buffer Archive bytes
+     */
+    public MappedArchiveReader(ByteBuffer buffer) {
+        this.file = null;
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void position(int position) {
+        this.position = position;
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public int getSize() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public byte[] readBytes(int length) {
+        byte[] data = readBytes(position, length);
+        position += length;
+        return data;
+    }
+
+    @Override
+    public byte[] readBytes(int position, int length) {
+        guard.readLock().lock();
+        try {
+            byte[] data = new byte[length];
+            slice(position, length).get(data);
+            return data;
+        } finally {
+            guard.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int readInt() {
+        checkOpen();
+        int value = buffer.getInt(position);
+        position += 4;
+        return value;
+    }
+
+    @Override
+    public int readShort() {
+        checkOpen();
+        int value = Short.toUnsignedInt(buffer.getShort(position));
+        position += 2;
+        return value;
+    }
+
+    @Override
+    public long readLong() {
+        checkOpen();
+        long value = buffer.getLong(position);
+        position += 8;
+        return value;
+    }
+
+    @Override
+    public String readString(int length) {
+        return new String(readBytes(length), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void goTo(byte[] sequence) {
+        checkOpen();
+        int last = buffer.capacity() - sequence.length;
+        for (int i = position; i <= last; i++) {
+            int matched = 0;
+            while (matched < sequence.length && buffer.get(i + matched) == sequence[matched]) {
+                matched++;
+            }
+            if (matched == sequence.length) {
+                position = i;
+                return;
+            }
+        }
+        throw new MpqException("Could not find sequence after position " + position);
+    }
+
+    @Override
+    public ByteBuffer slice(int position, int length) {
+        checkOpen();
+        if (position < 0 || length < 0 || (long) position + length > buffer.capacity()) {
+            throw new MpqException("Cannot read " + length + " bytes at " + position
+                    + " (size = " + buffer.capacity() + ")");
+        }
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(position);
+        ((Buffer) view).limit(position + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new MpqException("Archive is closed: " + file);
+        }
+    }
+
+    @Override
+    public FileChannel openChannel() throws IOException {
+        if (file == null) {
+            return null;
+        }
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Unmaps the file, waiting for copies out of it to finish.
+     * A reader over an existing buffer has nothing to release.
+     */
+    @Override
+    public void close() {
+        guard.writeLock().lock();
+        try {
+            if (closed || file == null) {
+                return;
+            }
+            closed = true;
+            unmap(buffer);
+        } finally {
+            guard.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases a mapping now rather than when it is garbage collected.
+     * There is no public API for this: Java 9 and later have
+     * Unsafe.invokeCleaner, Java 8 the buffer's own cleaner. If neither
+     * works, the mapping is left to the garbage collector.
+     *
+     * @param mapping Buffer returned by FileChannel.map
+     */
+    private static void unmap(ByteBuffer mapping) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mapping);
+        } catch (NoSuchMethodException ex) {
+            try {
+                Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapping);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // Left to the garbage collector.
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Left to the garbage collector.
+        }
+    }
+}
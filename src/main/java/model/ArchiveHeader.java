@@ -3,7 +3,7 @@ package model;
 import helper.MaliciousMPQHelper;
 import interfaces.IReadable;
 import interfaces.IByteSerializable;
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import settings.MpqContext;
 
 import java.nio.ByteBuffer;
@@ -11,6 +11,9 @@ import java.nio.ByteOrder;
 
 public final class ArchiveHeader implements IReadable, IByteSerializable {
 
+    /* Signature at the start of every MPQ header: "MPQ" followed by 0x1A */
+    private static final byte[] MPQ_MAGIC = {'M', 'P', 'Q', 0x1A};
+
     private int offsetStart;
     private String magic = ""; //char4
     private int headerSize; //int32
@@ -45,14 +48,14 @@ public final class ArchiveHeader implements IReadable, IByteSerializable {
     }
 
     /**
-     * Reads from the binary reader into this model object
+     * Reads from the archive reader into this model object
      *
-     * @param reader Binary reader
+     * @param reader Archive reader
      */
     @Override
-    public void read(BinaryReader reader) {
+    public void read(IArchiveReader reader) {
         try {
-            reader.goTo("MPQ␚");
+            reader.goTo(MPQ_MAGIC);
             int start = reader.getPosition();
             offsetStart = reader.getPosition();
             magic = reader.readString(4);
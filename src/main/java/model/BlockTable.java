@@ -2,20 +2,36 @@ package model;
 
 
 import frost.FrostSecurity;
+import helper.MaliciousMPQHelper;
 import interfaces.IByteSerializable;
 import settings.MpqContext;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static frost.FrostConstants.BLOCK_TABLE_ENCRYPTION_KEY;
-import static helper.ByteHelper.*;
 import static frost.FrostConstants.BYTES_PER_BLOCK_TABLE_ENTRY;
 
+/**
+ * The block table of an archive.
+ * <p>
+ * Each field is stored in its own primitive array, indexed by block.
+ * BlockTableEntry objects are views over one block; they are created
+ * when first asked for and then reused, and they follow their block
+ * when blocks are removed and the table is renumbered.
+ */
 public final class BlockTable implements IByteSerializable {
-    private List<BlockTableEntry> entries;
+    private int[] blockOffset;
+    private int[] blockSize;
+    private int[] fileSize;
+    private int[] flags;
+    private BlockTableEntry[] views;
+    private int count;
+
     private FrostSecurity security;
     private MpqContext context;
 
@@ -28,7 +44,6 @@ public final class BlockTable implements IByteSerializable {
     public BlockTable(FrostSecurity frostSecurity, EncryptedBlockTable encryptedBlockTable, MpqContext context) {
         this.context = context;
         this.security = frostSecurity;
-        entries = new ArrayList<>();
         byte[] encryptedData = encryptedBlockTable.getEncryptedData();
         context.getLogger().debug("Attempting to decrypt block table... key=" + BLOCK_TABLE_ENCRYPTION_KEY);
         byte[] decryptedData = frostSecurity.decryptBytes(encryptedData, BLOCK_TABLE_ENCRYPTION_KEY);
@@ -37,17 +52,45 @@ public final class BlockTable implements IByteSerializable {
             context.getErrorHandler().handleCriticalError("Could not convert decrypted bytes " +
                     "into table entries (size = " + decryptedData.length + ")");
         }
-        for (int i = 0; i < decryptedData.length / BYTES_PER_BLOCK_TABLE_ENTRY; i++) {
-            byte[] blockOffset = extractBytes(decryptedData, i * BYTES_PER_BLOCK_TABLE_ENTRY, 4);
-            byte[] blockSize = extractBytes(decryptedData, 4 + (i * BYTES_PER_BLOCK_TABLE_ENTRY), 4);
-            byte[] fileSize = extractBytes(decryptedData, 8 + (i * BYTES_PER_BLOCK_TABLE_ENTRY), 4);
-            byte[] flags = extractBytes(decryptedData, 12 + (i * BYTES_PER_BLOCK_TABLE_ENTRY), 4);
-            BlockTableEntry entry = new BlockTableEntry(byteToInt(blockOffset),
-                    byteToInt(blockSize), byteToInt(fileSize), byteToInt(flags), context);
-            entry.setCallbackId(i);
-            entries.add(entry);
+        int size = decryptedData.length / BYTES_PER_BLOCK_TABLE_ENTRY;
+        allocate(size);
+        ByteBuffer buffer = ByteBuffer.wrap(decryptedData).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < size; i++) {
+            blockOffset[i] = MaliciousMPQHelper.fixNegativeValue(buffer.getInt());
+            blockSize[i] = MaliciousMPQHelper.fixNegativeValue(buffer.getInt());
+            fileSize[i] = MaliciousMPQHelper.fixNegativeValue(buffer.getInt());
+            flags[i] = buffer.getInt();
+            BlockTableEntry.checkFlagValidity(flags[i], blockSize[i], context);
         }
-        context.getLogger().info("Block table has " + entries.size() + " entries");
+        count = size;
+        context.getLogger().info("Block table has " + count + " entries");
+    }
+
+    /**
+     * Creates a block table holding a single entry.
+     *
+     * @param blockOffset Offset of the block from the archive header
+     * @param blockSize   Size of the block
+     * @param fileSize    Uncompressed file size
+     * @param flags       Block flags
+     * @param context     MPQ context
+     */
+    BlockTable(int blockOffset, int blockSize, int fileSize, int flags, MpqContext context) {
+        this.context = context;
+        allocate(1);
+        this.blockOffset[0] = blockOffset;
+        this.blockSize[0] = blockSize;
+        this.fileSize[0] = fileSize;
+        this.flags[0] = flags;
+        count = 1;
+    }
+
+    private void allocate(int capacity) {
+        blockOffset = new int[capacity];
+        blockSize = new int[capacity];
+        fileSize = new int[capacity];
+        flags = new int[capacity];
+        views = new BlockTableEntry[capacity];
     }
 
     /**
@@ -58,31 +101,256 @@ public final class BlockTable implements IByteSerializable {
      */
     @Override
     public byte[] toBytes() {
-        ByteBuffer buffer = ByteBuffer.allocate(BYTES_PER_BLOCK_TABLE_ENTRY * entries.size());
+        ByteBuffer buffer = ByteBuffer.allocate(BYTES_PER_BLOCK_TABLE_ENTRY * count);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (BlockTableEntry entry : entries) {
-            buffer.put(entry.toBytes());
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(blockOffset[i]);
+            buffer.putInt(blockSize[i]);
+            buffer.putInt(fileSize[i]);
+            buffer.putInt(flags[i]);
         }
-        EncryptedBlockTable encryptedBlockTable = new EncryptedBlockTable(entries.size(), context);
+        EncryptedBlockTable encryptedBlockTable = new EncryptedBlockTable(count, context);
         encryptedBlockTable.encrypt(buffer.array(), security);
         return encryptedBlockTable.toBytes();
     }
 
-    public int addEntry(BlockTableEntry blockTableEntry) {
-        entries.add(blockTableEntry);
-        return entries.size() - 1;
+    /**
+     * Appends an entry to the table.
+     * The entry becomes a view over its new block.
+     *
+     * @param blockTableEntry Entry to add
+     * @return Index of the new block
+     */
+    public synchronized int addEntry(BlockTableEntry blockTableEntry) {
+        if (count == flags.length) {
+            int capacity = Math.max(8, count * 2);
+            blockOffset = Arrays.copyOf(blockOffset, capacity);
+            blockSize = Arrays.copyOf(blockSize, capacity);
+            fileSize = Arrays.copyOf(fileSize, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            views = Arrays.copyOf(views, capacity);
+        }
+        int index = count;
+        blockOffset[index] = blockTableEntry.getBlockOffset();
+        blockSize[index] = blockTableEntry.getBlockSize();
+        fileSize[index] = blockTableEntry.getFileSize();
+        flags[index] = blockTableEntry.getFlags();
+        blockTableEntry.attach(this, index);
+        views[index] = blockTableEntry;
+        count++;
+        return index;
+    }
+
+    /**
+     * Removes blocks and renumbers the ones after them.
+     * Entries of the kept blocks follow their block to its new index.
+     *
+     * @param removed Which blocks to remove, by current index
+     * @return New index of each current block, or -1 if it was removed
+     */
+    public synchronized int[] removeEntries(boolean[] removed) {
+        int[] newIndex = new int[count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (removed[i]) {
+                newIndex[i] = -1;
+                if (views[i] != null) {
+                    // Removed entries keep their values, but no longer belong to this table.
+                    detach(views[i]);
+                    views[i] = null;
+                }
+                continue;
+            }
+            newIndex[i] = kept;
+            blockOffset[kept] = blockOffset[i];
+            blockSize[kept] = blockSize[i];
+            fileSize[kept] = fileSize[i];
+            flags[kept] = flags[i];
+            views[kept] = views[i];
+            if (views[kept] != null) {
+                views[kept].attach(this, kept);
+            }
+            kept++;
+        }
+        Arrays.fill(views, kept, count, null);
+        count = kept;
+        return newIndex;
     }
 
-    public BlockTableEntry get(int index) {
-        return entries.get(index);
+    /**
+     * Retrieves the entry of a block.
+     *
+     * @param index Block index
+     * @return View over the block
+     */
+    public synchronized BlockTableEntry get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Block " + index + " of " + count);
+        }
+        BlockTableEntry entry = views[index];
+        if (entry == null) {
+            entry = new BlockTableEntry(this, index, context);
+            views[index] = entry;
+        }
+        return entry;
     }
 
+    /**
+     * Retrieves the entries of this table as a list backed by the table.
+     * Entries are views, so changes to them change the table. Setting,
+     * adding and removing entries through the list changes the table too,
+     * without renumbering the hash table; adding anywhere but the end
+     * rewrites every block.
+     *
+     * @return List of entries, in block order
+     */
     public List<BlockTableEntry> getEntries() {
-        return entries;
+        return new AbstractList<BlockTableEntry>() {
+            @Override
+            public BlockTableEntry get(int index) {
+                return BlockTable.this.get(index);
+            }
+
+            @Override
+            public BlockTableEntry set(int index, BlockTableEntry entry) {
+                return BlockTable.this.set(index, entry);
+            }
+
+            @Override
+            public void add(int index, BlockTableEntry entry) {
+                if (index == count) {
+                    addEntry(entry);
+                    return;
+                }
+                List<BlockTableEntry> entries = new ArrayList<>(this);
+                entries.add(index, entry);
+                setEntries(entries);
+            }
+
+            @Override
+            public BlockTableEntry remove(int index) {
+                BlockTableEntry removed = BlockTable.this.get(index);
+                boolean[] mask = new boolean[count];
+                mask[index] = true;
+                removeEntries(mask);
+                return removed;
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Replaces the entry of a block with a copy of the provided entry.
+     * The provided entry becomes a view over the block.
+     *
+     * @param index Block index
+     * @param entry New entry
+     * @return Entry that was at the index, no longer part of this table
+     */
+    public synchronized BlockTableEntry set(int index, BlockTableEntry entry) {
+        BlockTableEntry previous = get(index);
+        if (previous == entry) {
+            return previous;
+        }
+        int offset = entry.getBlockOffset();
+        int entryBlockSize = entry.getBlockSize();
+        int entryFileSize = entry.getFileSize();
+        int entryFlags = entry.getFlags();
+        detach(previous);
+        blockOffset[index] = offset;
+        blockSize[index] = entryBlockSize;
+        fileSize[index] = entryFileSize;
+        flags[index] = entryFlags;
+        entry.attach(this, index);
+        views[index] = entry;
+        return previous;
+    }
+
+    /**
+     * Moves an entry into a table of its own, keeping its values.
+     *
+     * @param entry Entry to detach
+     */
+    private void detach(BlockTableEntry entry) {
+        entry.attach(new BlockTable(entry.getBlockOffset(), entry.getBlockSize(),
+                entry.getFileSize(), entry.getFlags(), context), 0);
+    }
+
+    /**
+     * Replaces every entry of this table with a copy of the provided entries.
+     * The provided entries become views over this table.
+     *
+     * @param entries New entries
+     */
+    public synchronized void setEntries(List<BlockTableEntry> entries) {
+        int size = entries.size();
+        int[] offsets = new int[size];
+        int[] blockSizes = new int[size];
+        int[] fileSizes = new int[size];
+        int[] blockFlags = new int[size];
+        for (int i = 0; i < size; i++) {
+            BlockTableEntry entry = entries.get(i);
+            offsets[i] = entry.getBlockOffset();
+            blockSizes[i] = entry.getBlockSize();
+            fileSizes[i] = entry.getFileSize();
+            blockFlags[i] = entry.getFlags();
+        }
+        allocate(size);
+        this.blockOffset = offsets;
+        this.blockSize = blockSizes;
+        this.fileSize = fileSizes;
+        this.flags = blockFlags;
+        this.count = size;
+        for (int i = 0; i < size; i++) {
+            BlockTableEntry entry = entries.get(i);
+            entry.attach(this, i);
+            views[i] = entry;
+        }
+    }
+
+    /**
+     * Number of blocks in the table.
+     *
+     * @return Block count
+     */
+    public int size() {
+        return count;
+    }
+
+    public int getBlockOffset(int index) {
+        return blockOffset[index];
+    }
+
+    public int getBlockSize(int index) {
+        return blockSize[index];
+    }
+
+    public int getFileSize(int index) {
+        return fileSize[index];
+    }
+
+    public int getFlags(int index) {
+        return flags[index];
+    }
+
+    void setBlockOffset(int index, int blockOffset) {
+        this.blockOffset[index] = blockOffset;
+    }
+
+    void setBlockSize(int index, int blockSize) {
+        this.blockSize[index] = blockSize;
+    }
+
+    void setFileSize(int index, int fileSize) {
+        this.fileSize[index] = fileSize;
     }
 
-    public void setEntries(List<BlockTableEntry> entries) {
-        this.entries = entries;
+    void setFlags(int index, int flags) {
+        this.flags[index] = flags;
     }
 
     public MpqContext getContext() {
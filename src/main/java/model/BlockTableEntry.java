@@ -11,43 +11,55 @@ import static frost.FrostConstants.BYTES_PER_BLOCK_TABLE_ENTRY;
 
 /**
  * Represents a single entry in the Block Table.
+ * Entries are views over one block of a {@link BlockTable}; reading or
+ * changing an entry reads or changes the table.
  */
 public final class BlockTableEntry implements IByteSerializable {
 
     /**
-     * Basic block information
+     * Table and block this entry views
      */
-    private int blockOffset;
-    private int blockSize;
-    private int fileSize;
-    private int flags;
+    private BlockTable table;
+    private int index;
 
     /**
      * Array index callback for debugging
      */
     private int callbackId;
 
-    /**
-     * Calculated from flags
-     */
-    private boolean isFile;
-    private boolean singleUnit;
-    private boolean keyAdjusted;
-    private boolean encrypted;
-    private boolean compressed;
-    private boolean imploded;
-
     private MpqContext context;
 
     public BlockTableEntry(int blockOffset, int blockSize, int fileSize,
                            int flags, MpqContext context) {
-        this.blockOffset = MaliciousMPQHelper.fixNegativeValue(blockOffset);
-        this.blockSize = MaliciousMPQHelper.fixNegativeValue(blockSize);
-        this.fileSize = MaliciousMPQHelper.fixNegativeValue(fileSize);
-        this.flags = flags;
+        this(new BlockTable(MaliciousMPQHelper.fixNegativeValue(blockOffset),
+                MaliciousMPQHelper.fixNegativeValue(blockSize),
+                MaliciousMPQHelper.fixNegativeValue(fileSize), flags, context), 0, context);
+        checkFlagValidity(flags, getBlockSize(), context);
+    }
+
+    /**
+     * Creates a view over a block of the block table.
+     *
+     * @param table   Block table
+     * @param index   Block index
+     * @param context MPQ context
+     */
+    BlockTableEntry(BlockTable table, int index, MpqContext context) {
+        this.table = table;
+        this.index = index;
+        this.callbackId = index;
         this.context = context;
-        calculateFlagValues();
-        checkFlagValidity();
+    }
+
+    /**
+     * Makes this entry a view over another block.
+     *
+     * @param table Block table
+     * @param index Block index
+     */
+    void attach(BlockTable table, int index) {
+        this.table = table;
+        this.index = index;
     }
 
     /**
@@ -60,18 +72,25 @@ public final class BlockTableEntry implements IByteSerializable {
     public byte[] toBytes() {
         ByteBuffer buffer = ByteBuffer.allocate(BYTES_PER_BLOCK_TABLE_ENTRY);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
-        buffer.putInt(blockOffset);
-        buffer.putInt(blockSize);
-        buffer.putInt(fileSize);
-        buffer.putInt(flags);
+        buffer.putInt(getBlockOffset());
+        buffer.putInt(getBlockSize());
+        buffer.putInt(getFileSize());
+        buffer.putInt(getFlags());
         return buffer.array();
     }
 
     /**
      * Checks that the flag values are valid.
      * If not valid, logs a warning.
+     *
+     * @param flags     Block flags
+     * @param blockSize Block size
+     * @param context   MPQ context
      */
-    private void checkFlagValidity() {
+    static void checkFlagValidity(int flags, int blockSize, MpqContext context) {
+        boolean isFile = (flags & 0x80000000) != 0;
+        boolean keyAdjusted = (flags & 0x00020000) != 0;
+        boolean encrypted = (flags & 0x00010000) != 0;
         if (keyAdjusted && !encrypted) {
             context.getLogger().warn("Block cannot be key adjusted and not encrypted");
         }
@@ -79,78 +98,75 @@ public final class BlockTableEntry implements IByteSerializable {
             if (blockSize > 0) {
                 context.getLogger().warn("Block is not a file but has size");
             }
-            if (singleUnit || keyAdjusted || encrypted || compressed || imploded) {
+            if ((flags & 0x01030300) != 0) {
                 context.getLogger().warn("Block is not a file but has flags");
             }
         }
     }
 
-    /**
-     * Calculates the values of each individual flag from the original flag int
-     */
-    private void calculateFlagValues() {
-        isFile = (flags & 0x80000000) != 0;
-        singleUnit = (flags & 0x01000000) != 0;
-        keyAdjusted = (flags & 0x00020000) != 0;
-        encrypted = (flags & 0x00010000) != 0;
-        compressed = (flags & 0x00000200) != 0;
-        imploded = (flags & 0x00000100) != 0;
-    }
-
     public int getBlockOffset() {
-        return blockOffset;
+        return table.getBlockOffset(index);
     }
 
     public void setBlockOffset(int blockOffset) {
-        this.blockOffset = blockOffset;
+        table.setBlockOffset(index, blockOffset);
     }
 
     public int getBlockSize() {
-        return blockSize;
+        return table.getBlockSize(index);
     }
 
     public void setBlockSize(int blockSize) {
-        this.blockSize = blockSize;
+        table.setBlockSize(index, blockSize);
     }
 
     public int getFileSize() {
-        return fileSize;
+        return table.getFileSize(index);
     }
 
     public void setFileSize(int fileSize) {
-        this.fileSize = fileSize;
+        table.setFileSize(index, fileSize);
     }
 
     public int getFlags() {
-        return flags;
+        return table.getFlags(index);
     }
 
     public void setFlags(int flags) {
-        this.flags = flags;
+        table.setFlags(index, flags);
     }
 
     public boolean isFile() {
-        return isFile;
+        return (getFlags() & 0x80000000) != 0;
     }
 
     public boolean isSingleUnit() {
-        return singleUnit;
+        return (getFlags() & 0x01000000) != 0;
     }
 
     public boolean isKeyAdjusted() {
-        return keyAdjusted;
+        return (getFlags() & 0x00020000) != 0;
     }
 
     public boolean isEncrypted() {
-        return encrypted;
+        return (getFlags() & 0x00010000) != 0;
     }
 
     public boolean isCompressed() {
-        return compressed;
+        return (getFlags() & 0x00000200) != 0;
     }
 
     public boolean isImploded() {
-        return imploded;
+        return (getFlags() & 0x00000100) != 0;
+    }
+
+    /**
+     * Index of the block this entry views.
+     *
+     * @return Block index
+     */
+    public int getIndex() {
+        return index;
     }
 
     public int getCallbackId() {
@@ -4,7 +4,7 @@ import helper.ByteHelper;
 import helper.MaliciousMPQHelper;
 import interfaces.IReadable;
 import interfaces.IByteSerializable;
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import settings.MpqContext;
 import frost.FrostConstants;
 import frost.FrostSecurity;
@@ -46,12 +46,12 @@ public final class EncryptedBlockTable implements IReadable, IByteSerializable {
     }
 
     /**
-     * Reads from the binary reader into this model object
+     * Reads from the archive reader into this model object
      *
-     * @param reader Binary reader
+     * @param reader Archive reader
      */
     @Override
-    public void read(BinaryReader reader) {
+    public void read(IArchiveReader reader) {
         try {
             if(MaliciousMPQHelper.sizeCheck(entryCount, FrostConstants.BYTES_PER_BLOCK_TABLE_ENTRY)) {
                 context.getErrorHandler().handleCriticalError("Hash table too large");
@@ -5,7 +5,7 @@ import helper.ByteHelper;
 import helper.MaliciousMPQHelper;
 import interfaces.IReadable;
 import interfaces.IByteSerializable;
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import settings.MpqContext;
 
 import java.io.IOException;
@@ -30,12 +30,12 @@ public final class EncryptedHashTable implements IReadable, IByteSerializable {
     }
 
     /**
-     * Reads from the binary reader into this model object
+     * Reads from the archive reader into this model object
      *
-     * @param reader Binary reader
+     * @param reader Archive reader
      */
     @Override
-    public void read(BinaryReader reader) {
+    public void read(IArchiveReader reader) {
         try {
             if(MaliciousMPQHelper.sizeCheck(entryCount, BYTES_PER_HASH_TABLE_ENTRY)) {
                 context.getErrorHandler().handleCriticalError("Hash table too large");
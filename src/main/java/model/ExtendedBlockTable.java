@@ -2,7 +2,7 @@ package model;
 
 import interfaces.IReadable;
 import interfaces.IByteSerializable;
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import settings.MpqContext;
 
 public final class ExtendedBlockTable implements IReadable, IByteSerializable {
@@ -14,12 +14,12 @@ public final class ExtendedBlockTable implements IReadable, IByteSerializable {
     }
 
     /**
-     * Reads from the binary reader into this model object
+     * Reads from the archive reader into this model object
      *
-     * @param reader Binary reader
+     * @param reader Archive reader
      */
     @Override
-    public void read(BinaryReader reader) {
+    public void read(IArchiveReader reader) {
         throw new UnsupportedOperationException("Under development");
     }
 
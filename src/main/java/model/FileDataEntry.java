@@ -1,29 +1,34 @@
 package model;
 
 import frost.FrostSecurity;
+import helper.ChannelHelper;
 import interfaces.IByteSerializable;
-import frost.FrostConstants;
+import interfaces.IChannelSerializable;
 import interfaces.IReadable;
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import settings.MpqContext;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
-public final class FileDataEntry implements IReadable, IByteSerializable {
+public final class FileDataEntry implements IReadable, IByteSerializable, IChannelSerializable {
 
-    private int initialPosition;
+    private int initialPosition; // Position of the block when the archive is written
+    private int sourcePosition; // Position of the block in the archive it was read from
     private int archiveOffset;
     private ArchiveHeader header;
     private BlockTableEntry blockTableEntry;
     private HashTableEntry hashTableEntry;
     private FrostSecurity frostSecurity;
 
-    private String fileName = "(unknown)";
+    private volatile String fileName = "(unknown)";
 
     private boolean isComplete;
 
@@ -36,7 +41,8 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
     private int[] originalOffsetTable;
 
     private MpqContext context;
-    private BinaryReader reader;
+    private IArchiveReader reader;
+    private SectorCache sectorCache;
 
     private void allocateOffsetTables() {
         if (offsetTablesAllocated) {
@@ -58,6 +64,7 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
     public FileDataEntry(int archiveOffset, FrostSecurity frostSecurity, int initialPosition, ArchiveHeader header, BlockTableEntry blockTableEntry, HashTableEntry hashTableEntry, MpqContext context) {
         this.frostSecurity = frostSecurity;
         this.initialPosition = initialPosition;
+        this.sourcePosition = initialPosition;
         if (initialPosition < -1) {
             context.getLogger().warn("Negative file data position");
             return;
@@ -78,7 +85,7 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
         }
     }
 
-    private void read(BinaryReader reader, int key) {
+    private void read(IArchiveReader reader, int key) {
         if (isComplete) {
             // We already read it.
             return;
@@ -90,8 +97,6 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
             return;
         }
 
-        reader.position(initialPosition);
-
         try {
             if (!(blockTableEntry.isCompressed() || blockTableEntry.isImploded())) {
                 context.getLogger().debug("Reading data with no offset table");
@@ -120,16 +125,60 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
     }
 
     /**
-     * Reads from the binary reader into this model object
+     * Splits new file data into sectors and compresses each one,
+     * building the sector offset table that precedes them.
+     * Sectors that don't shrink are stored raw. If the file as a whole
+     * doesn't shrink, nothing is set and the file should be stored as
+     * a single unit instead.
+     * The block size of the block table entry is set to the size of the result.
+     *
+     * @param data File bytes
+     * @return True if the file was stored compressed
+     */
+    public boolean setCompressedSectorData(byte[] data) {
+        int sectorSize = header.getSectorSize();
+        int[] offsets = new int[sectorsInFile + 1];
+        List<FileSectorEntry> sectors = new ArrayList<>(sectorsInFile);
+        int position = 4 * (sectorsInFile + 1);
+        for (int i = 0; i < sectorsInFile; i++) {
+            int start = i * sectorSize;
+            int realSize = Math.min(sectorSize, data.length - start);
+            byte[] stored = context.getCompressionHandler().compressSector(data, start, realSize);
+            offsets[i] = position;
+            FileSectorEntry entry = new FileSectorEntry(position, position + stored.length,
+                    blockTableEntry.getBlockOffset(), stored.length, realSize,
+                    stored.length < realSize, false, -1, null, context, frostSecurity);
+            entry.setSingleSectorData(stored);
+            entry.setRead(true);
+            sectors.add(entry);
+            position += stored.length;
+        }
+        offsets[sectorsInFile] = position;
+        if (position >= data.length) {
+            context.getLogger().debug("Compressing " + data.length + " bytes saved nothing");
+            return false;
+        }
+        this.sectorOffsetTable = offsets;
+        this.originalOffsetTable = offsets.clone();
+        offsetTablesAllocated = true;
+        newSectors.addAll(sectors);
+        blockTableEntry.setBlockSize(position);
+        isComplete = true;
+        context.getLogger().debug("Compressed " + data.length + " bytes into " + position);
+        return true;
+    }
+
+    /**
+     * Reads from the archive reader into this model object
      *
-     * @param reader Binary reader
+     * @param reader Archive reader
      */
     @Override
-    public void read(BinaryReader reader) {
+    public void read(IArchiveReader reader) {
         read(reader, -1);
     }
 
-    private void readUncompressedFileData(BinaryReader reader, int key) throws IOException {
+    private void readUncompressedFileData(IArchiveReader reader, int key) throws IOException {
         if (blockTableEntry.isEncrypted() && key == -1) {
             this.reader = reader; // Now we need to save the reader.
             return;
@@ -141,24 +190,25 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
         int remainingSize = blockTableEntry.getFileSize();
 
         // While unlikely, it's possible that an uncompressed file can be large enough
-        // to be split into multiple sectors.
-        for (int i = 0; i < sectorsInFile - 1; i++) {
+        // to be split into multiple sectors. Single unit files are never split.
+        int sectors = blockTableEntry.isSingleUnit() ? 1 : sectorsInFile;
+        for (int i = 0; i < sectors - 1; i++) {
             int start = currentPosition;
             int end = currentPosition + header.getSectorSize();
             currentPosition = end;
             remainingSize -= header.getSectorSize();
 
             FileSectorEntry entry = new FileSectorEntry(start, end,
-                    archiveOffset + blockTableEntry.getBlockOffset(),
-                    blockTableEntry.getFileSize(), blockTableEntry.getFileSize(),
+                    sourcePosition,
+                    end - start, end - start,
                     false, blockTableEntry.isEncrypted(),
                     key, reader, context, frostSecurity);
             newSectors.add(entry);
         }
         int fileEnd = currentPosition + remainingSize;
         FileSectorEntry entry = new FileSectorEntry(currentPosition, fileEnd,
-                archiveOffset + blockTableEntry.getBlockOffset(),
-                blockTableEntry.getFileSize(), blockTableEntry.getFileSize(),
+                sourcePosition,
+                remainingSize, remainingSize,
                 false, blockTableEntry.isEncrypted(),
                 key, reader, context, frostSecurity);
         newSectors.add(entry);
@@ -166,7 +216,7 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
         isComplete = true;
     }
 
-    private void readCompressedFiledata(BinaryReader reader, int key) throws IOException {
+    private void readCompressedFiledata(IArchiveReader reader, int key) throws IOException {
 
         if (blockTableEntry.isEncrypted() && key == -1) {
             this.reader = reader; // Now we need to save the reader.
@@ -178,8 +228,10 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
         int totalReadBytes = 0;
 
         // Build the offset table
+        ByteBuffer offsetTable = ByteBuffer.wrap(reader.readBytes(sourcePosition, 4 * (sectorsInFile + 1)))
+                .order(ByteOrder.LITTLE_ENDIAN);
         for (int i = 0; i < sectorsInFile + 1; i++) {
-            sectorOffsetTable[i] = reader.readInt();
+            sectorOffsetTable[i] = offsetTable.getInt();
             originalOffsetTable[i] = sectorOffsetTable[i];
         }
 
@@ -212,7 +264,7 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
             // it will NOT actually compress the data! We can treat it as uncompressed.
             boolean isActuallyCompressed = compressedSectorSize < realSectorSize;
             FileSectorEntry entry = new FileSectorEntry(start, end,
-                    archiveOffset + blockTableEntry.getBlockOffset(),
+                    sourcePosition,
                     compressedSectorSize, realSectorSize, isActuallyCompressed, blockTableEntry.isEncrypted(),
                     key, reader, context, frostSecurity);
             newSectors.add(entry);
@@ -229,47 +281,168 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
         return hashTableEntry;
     }
 
+    /**
+     * Retrieves the decompressed bytes of this file.
+     * Safe to call from several threads at once: the sector list is
+     * built once under this entry's lock, and each sector guards its
+     * own caches.
+     *
+     * @param fileName File name, used to compute the key of encrypted files
+     * @return File data
+     */
     public byte[] getFileBytes(String fileName) {
         this.fileName = fileName;
         if (blockTableEntry.getFileSize() <= 0) {
             // Extract the empty file, I guess?
             return new byte[0];
         }
-        int key = -1;
-        if (blockTableEntry.isEncrypted() && !isComplete) {
-            if (fileName.contains("\\")) {
-                fileName = fileName.substring(1 + fileName.lastIndexOf("\\"));
+        if (!readWithKey(fileName)) {
+            // For some reason, coulnd't read completely... avoid infinite loop.
+            context.getErrorHandler().handleCriticalError("Could not " +
+                    "complete file data entry for " + fileName);
+            return new byte[0];
+        }
+        context.getLogger().info("Extracting: " + fileName);
+        context.getLogger().debug("File has " + blockTableEntry.getFileSize() + " bytes");
+        byte[] fileBytes = new byte[blockTableEntry.getFileSize()];
+        int position = 0;
+        for (int i = 0; i < newSectors.size(); i++) {
+            context.getLogger().debug("Reading a sector...");
+            position += decodeSector(i, fileBytes, position);
+            context.getLogger().debug("Expanded to " + position + " bytes");
+        }
+        return fileBytes;
+    }
+
+    /**
+     * Decodes one sector of this file into part of an array.
+     * Without a sector cache to fill, the sector is decompressed
+     * straight into dest.
+     *
+     * @param sectorIndex Index of the sector in this file
+     * @param dest        Array to write the sector into
+     * @param destOffset  Position of the sector in dest
+     * @return Number of bytes written
+     */
+    private int decodeSector(int sectorIndex, byte[] dest, int destOffset) {
+        if (sectorCache == null || sectorCache.getCapacity() <= 0) {
+            return newSectors.get(sectorIndex).decodeInto(sectorIndex, dest, destOffset);
+        }
+        byte[] data = decodeSector(sectorIndex);
+        if (data.length > dest.length - destOffset) {
+            throw new BufferOverflowException();
+        }
+        System.arraycopy(data, 0, dest, destOffset, data.length);
+        return data.length;
+    }
+
+    /**
+     * Decodes one sector of this file, going through the archive's
+     * sector cache when there is one.
+     * The returned array may be shared and must not be modified.
+     *
+     * @param sectorIndex Index of the sector in this file
+     * @return Decoded sector bytes
+     */
+    byte[] decodeSector(int sectorIndex) {
+        if (sectorCache == null) {
+            return newSectors.get(sectorIndex).decode(sectorIndex);
+        }
+        byte[] data = sectorCache.get(this, sectorIndex);
+        if (data == null) {
+            data = newSectors.get(sectorIndex).decode(sectorIndex);
+            sectorCache.put(this, sectorIndex, data);
+        }
+        return data;
+    }
+
+    /**
+     * Reads a range of this file, decoding only the sectors that cover it.
+     * The range is cut short at the end of the file.
+     *
+     * @param fileName File name, used to compute the key of encrypted files
+     * @param offset   First byte to read
+     * @param length   Number of bytes to read
+     * @return File data in the range
+     */
+    public byte[] read(String fileName, int offset, int length) {
+        this.fileName = fileName;
+        if (offset < 0 || length < 0) {
+            context.getErrorHandler().handleCriticalError("Invalid range for " + fileName
+                    + " (offset=" + offset + ", length=" + length + ")");
+            return new byte[0];
+        }
+        int fileSize = blockTableEntry.getFileSize();
+        if (offset >= fileSize) {
+            return new byte[0];
+        }
+        if (!readWithKey(fileName)) {
+            context.getErrorHandler().handleCriticalError("Could not " +
+                    "complete file data entry for " + fileName);
+            return new byte[0];
+        }
+        length = Math.min(length, fileSize - offset);
+        ByteBuffer range = ByteBuffer.allocate(length);
+
+        // Every sector but the last holds exactly one sector size of data.
+        // Imported files are a single sector, hence the clamp.
+        int sectorSize = header.getSectorSize();
+        int sector = Math.min(offset / sectorSize, newSectors.size() - 1);
+        int skip = offset - sector * sectorSize;
+        while (range.hasRemaining() && sector < newSectors.size()) {
+            byte[] data = decodeSector(sector);
+            int count = Math.min(range.remaining(), data.length - skip);
+            if (count > 0) {
+                range.put(data, skip, count);
             }
-            key = frostSecurity.hashAsInt(fileName, FrostConstants.MPQ_HASH_FILE_KEY);
+            skip = 0;
+            sector++;
+        }
+        context.getLogger().debug("Read " + length + " bytes at " + offset + " of " + fileName);
+        return range.array();
+    }
+
+    /**
+     * Opens a stream over this file that decodes one sector at a time.
+     *
+     * @param fileName File name, used to compute the key of encrypted files
+     * @return Stream of file data
+     */
+    public InputStream openStream(String fileName) {
+        this.fileName = fileName;
+        if (blockTableEntry.getFileSize() <= 0) {
+            return new FileDataInputStream(this, 0);
+        }
+        if (!readWithKey(fileName)) {
+            context.getErrorHandler().handleCriticalError("Could not " +
+                    "complete file data entry for " + fileName);
+            return new FileDataInputStream(this, 0);
+        }
+        return new FileDataInputStream(this, newSectors.size());
+    }
+
+    /**
+     * Builds the sector list if it wasn't built yet, computing the
+     * key from the file name for encrypted files.
+     *
+     * @param fileName File name in archive
+     * @return True if the sector list is complete
+     */
+    private synchronized boolean readWithKey(String fileName) {
+        if (isComplete) {
+            return true;
+        }
+        int key = -1;
+        if (blockTableEntry.isEncrypted()) {
+            key = frostSecurity.hashAll(fileName).getFileKey();
             context.getLogger().debug("Calculated key for fileName=" + fileName + " as " + key);
             if (blockTableEntry.isKeyAdjusted()) {
                 key = (key + blockTableEntry.getBlockOffset()) ^ blockTableEntry.getFileSize();
             }
             context.getLogger().debug("Adjusted key to: " + key);
         }
-        if (isComplete) {
-            context.getLogger().info("Extracting: " + fileName);
-            context.getLogger().debug("File has " + blockTableEntry.getFileSize() + " bytes");
-            ByteBuffer fileBytes = ByteBuffer.allocate(blockTableEntry.getFileSize());
-            int sectorCount = 0;
-            for (FileSectorEntry sector : newSectors) {
-                context.getLogger().debug("Reading a sector...");
-                sector.readRawData(sectorCount);
-                sector.addBytes(fileBytes);
-                context.getLogger().debug("Expanded to " + fileBytes.array().length + " bytes");
-                sectorCount++;
-            }
-            return fileBytes.array();
-        } else {
-            read(this.reader, key);
-            if (!isComplete) {
-                // For some reason, coulnd't read completely... avoid infinite loop.
-                context.getErrorHandler().handleCriticalError("Could not " +
-                        "complete file data entry for " + fileName);
-                return new byte[0];
-            }
-            return getFileBytes(fileName);
-        }
+        read(this.reader, key);
+        return isComplete;
     }
 
     public int getInitialPosition() {
@@ -280,6 +453,14 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
         this.initialPosition = initialPosition;
     }
 
+    public int getSourcePosition() {
+        return sourcePosition;
+    }
+
+    public void setSourcePosition(int sourcePosition) {
+        this.sourcePosition = sourcePosition;
+    }
+
     public int getArchiveOffset() {
         return archiveOffset;
     }
@@ -352,15 +533,23 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
         this.context = context;
     }
 
-    public BinaryReader getReader() {
+    public SectorCache getSectorCache() {
+        return sectorCache;
+    }
+
+    public void setSectorCache(SectorCache sectorCache) {
+        this.sectorCache = sectorCache;
+    }
+
+    public IArchiveReader getReader() {
         return reader;
     }
 
-    public void setReader(BinaryReader reader) {
+    public void setReader(IArchiveReader reader) {
         this.reader = reader;
     }
 
-    public void readAll() {
+    public synchronized void readAll() {
         for (int i = 0; i < newSectors.size(); i++) {
             FileSectorEntry sector = newSectors.get(i);
             if (!sector.isRead()) {
@@ -376,58 +565,139 @@ public final class FileDataEntry implements IReadable, IByteSerializable {
      * @return Byte array of object.
      */
     @Override
-    public byte[] toBytes() {
-        try {
-            ByteBuffer buffer = ByteBuffer.allocate(blockTableEntry.getBlockSize());
-            context.getLogger().debug("Allocated " + blockTableEntry.getBlockSize() + " bytes for file " + fileName
-                    + "(pos=" + blockTableEntry.getBlockOffset() + "-" + (blockTableEntry.getBlockOffset() +
-                    blockTableEntry.getBlockSize()) + ")");
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-
-            // We don't initiate this stuff unless we need it.
-            if(originalOffsetTable != null) {
-                for (int i = 0; i < originalOffsetTable.length; i++) {
-                    buffer.putInt(originalOffsetTable[i]);
-                }
-            }
+    public synchronized byte[] toBytes() {
+        ByteBuffer[] contents = blockContents();
+        int size = 0;
+        for (ByteBuffer part : contents) {
+            size += part.remaining();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (ByteBuffer part : contents) {
+            buffer.put(part);
+        }
+        return buffer.array();
+    }
 
-            for (int i = 0; i < newSectors.size(); i++) {
-                FileSectorEntry sector = newSectors.get(i);
-                if (!sector.isRead()) {
-                    sector.readRawData(i);
-                }
-                buffer.put(sector.toBytes());
-            }
+    /**
+     * Writes this block to the channel at its (new) position.
+     * Blocks read from the archive are copied straight from the
+     * archive mapping, so no more than one sector is copied onto the heap.
+     *
+     * @param channel Channel to write to
+     * @throws IOException If the channel can't be written to.
+     */
+    @Override
+    public synchronized void writeTo(FileChannel channel) throws IOException {
+        ChannelHelper.writeFully(channel, initialPosition, blockContents());
+    }
 
-            return buffer.array();
-        } catch (BufferOverflowException ex) {
-            ex.printStackTrace();
-            context.getErrorHandler().handleCriticalError
-                    ("Ran out of space for file");
-            return new byte[0];
+    /**
+     * Writes this block to the channel at its (new) position.
+     * A block read from the archive hasn't changed, so its bytes are
+     * copied across with FileChannel.transferTo, as they are on disk.
+     * Encrypted blocks are not decrypted and encrypted again: they are
+     * either not key-adjusted, or were left at their old offset.
+     *
+     * @param channel Channel to write to
+     * @param source  Channel over the archive this block was read from,
+     *                or null to copy through the archive reader
+     * @throws IOException If the channel can't be written to.
+     */
+    public synchronized void writeTo(FileChannel channel, FileChannel source) throws IOException {
+        if (source == null || !isUnchanged()) {
+            writeTo(channel);
+            return;
         }
+        ChannelHelper.transferFully(source, sourcePosition, sourceBlockSize(),
+                channel, initialPosition);
     }
 
-    public int getByteSize() {
-        if (blockTableEntry.isSingleUnit()) {
-            return blockTableEntry.getBlockSize();
-        } else {
-            return blockTableEntry.getBlockSize() + (4 * (sectorsInFile + 1));
+    /**
+     * Determines if this block is still the same as when it was read.
+     *
+     * @return True if the block came from the archive and can be copied as-is.
+     */
+    public boolean isUnchanged() {
+        return reader != null && sourcePosition >= 0;
+    }
+
+    /**
+     * Size of this block that can be copied from the source archive.
+     * Cut short if the block table claims the block runs past the end.
+     *
+     * @return Bytes to copy
+     */
+    private int sourceBlockSize() {
+        int blockSize = blockTableEntry.getBlockSize();
+        int available = Math.max(0, Math.min(blockSize, reader.getSize() - sourcePosition));
+        if (available < blockSize) {
+            context.getLogger().warn("Block for " + fileName + " runs past end of archive; "
+                    + "copying " + available + " of " + blockSize + " bytes");
         }
+        return available;
     }
 
+    /**
+     * Collects the bytes of this block, in order.
+     * A block read from the archive is unchanged, so it is copied as-is
+     * from where it was read, including any encrypted data and offset table.
+     * Only imported files are built from their sectors.
+     *
+     * @return Buffers holding the block
+     */
+    private ByteBuffer[] blockContents() {
+        int blockSize = blockTableEntry.getBlockSize();
+        context.getLogger().debug("Writing " + blockSize + " bytes for file " + fileName
+                + "(pos=" + initialPosition + "-" + (initialPosition + blockSize) + ")");
+        if (isUnchanged()) {
+            return new ByteBuffer[]{reader.slice(Math.min(sourcePosition, reader.getSize()),
+                    sourceBlockSize())};
+        }
+
+        ByteBuffer[] contents = new ByteBuffer[newSectors.size() + 1];
+        int tableSize = originalOffsetTable == null ? 0 : originalOffsetTable.length;
+        ByteBuffer table = ByteBuffer.allocate(4 * tableSize);
+        table.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < tableSize; i++) {
+            table.putInt(originalOffsetTable[i]);
+        }
+        ((Buffer) table).flip();
+        contents[0] = table;
+        for (int i = 0; i < newSectors.size(); i++) {
+            FileSectorEntry sector = newSectors.get(i);
+            if (!sector.isRead()) {
+                sector.readRawData(i);
+            }
+            contents[i + 1] = ByteBuffer.wrap(sector.toBytes());
+        }
+        return contents;
+    }
+
+    /**
+     * Number of bytes this block takes up in the archive,
+     * including its sector offset table.
+     *
+     * @return Block size
+     */
+    public int getByteSize() {
+        return blockTableEntry.getBlockSize();
+    }
+
+    /**
+     * Moves this block to a new position in the saved archive.
+     * Sectors keep reading from where the block was in the source archive.
+     *
+     * @param newFileOffset New position of the block
+     */
     public void setOffsetPosition(int newFileOffset) {
         initialPosition = newFileOffset;
-        for (FileSectorEntry sector : newSectors) {
-            sector.setOffset(newFileOffset);
-        }
     }
 
-    public void readSelf() {
+    public synchronized void readSelf() {
         read(reader);
     }
 
-    public void saveReader(BinaryReader reader) {
+    public void saveReader(IArchiveReader reader) {
         this.reader = reader;
     }
 }
@@ -0,0 +1,80 @@
+package model;
+
+import java.io.InputStream;
+
+/**
+ * Streams the contents of an archived file one sector at a time.
+ * Only the sector currently being read is held by the stream; it is
+ * decoded when the stream reaches it and dropped once it is consumed.
+ * Decoded sectors still go through the archive's sector cache.
+ */
+public final class FileDataInputStream extends InputStream {
+
+    private final FileDataEntry file;
+    private final int sectorCount;
+    private int nextSector;
+    private byte[] current = new byte[0];
+    private int position;
+
+    /**
+     * Creates a stream over the sectors of a file.
+     *
+     * @param file        File to read
+     * @param sectorCount Number of sectors in the file
+     */
+    public FileDataInputStream(FileDataEntry file, int sectorCount) {
+        this.file = file;
+        this.sectorCount = sectorCount;
+    }
+
+    /**
+     * Decodes the next sector once the current one is used up.
+     *
+     * @return True if there is data left to read; false at end of file.
+     */
+    private boolean fill() {
+        while (position >= current.length) {
+            if (nextSector >= sectorCount) {
+                return false;
+            }
+            current = file.decodeSector(nextSector);
+            nextSector++;
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() {
+        current = new byte[0];
+        position = 0;
+        nextSector = sectorCount;
+    }
+}
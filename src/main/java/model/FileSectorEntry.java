@@ -3,8 +3,7 @@ package model;
 import compression.CompressionHandler;
 import interfaces.IByteSerializable;
 import frost.FrostSecurity;
-import helper.ByteHelper;
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import settings.MpqContext;
 
 import java.io.IOException;
@@ -23,12 +22,10 @@ public final class FileSectorEntry implements IByteSerializable {
     private boolean encrypted; // True if encrypted, false if not
     private int sectorCount = -1;
     private byte[] rawData; // Stores raw bytes of sector, can be compressed
-    private byte[] fileData; // Stores decompressed/decrypted data. Essentially a cache for multiple extractions.
 
-    private BinaryReader reader;
+    private IArchiveReader reader;
 
     private boolean isRead; // Set to true when we read raw datA
-    private boolean isProcessed; // Set to true when we finish decompressing/decrypting/etc.
 
     private MpqContext context;
     private FrostSecurity frostSecurity;
@@ -43,12 +40,12 @@ public final class FileSectorEntry implements IByteSerializable {
      * @param realSize       File size of sector (decompressed)
      * @param compressed     True if compressed, false if not.
      * @param encrypted      True if encrypted, false if not
-     * @param reader         File reader linked to mpq file
+     * @param reader         Archive reader linked to mpq file
      * @param context        FrostMpq context
      */
     public FileSectorEntry(int start, int end, int offset, int compressedSize,
                            int realSize, boolean compressed, boolean encrypted, int key,
-                           BinaryReader reader, MpqContext context, FrostSecurity frostSecurity) {
+                           IArchiveReader reader, MpqContext context, FrostSecurity frostSecurity) {
         this.start = start;
         this.end = end;
         this.offset = offset;
@@ -64,50 +61,110 @@ public final class FileSectorEntry implements IByteSerializable {
 
     /**
      * Performs reading of bytes
+     * Synchronized so that only one thread fills the raw data cache.
      */
-    public void readRawData(int sectorCount) {
+    public synchronized void readRawData(int sectorCount) {
         if (isRead) {
             // We already read rawData so there's no need to do it again
             return;
         }
         try {
             // We only read rawData when requested to save memory!
-            reader.position(start + offset);
-            rawData = reader.readBytes((end + offset) - (start + offset));
-            if (encrypted) {
-                context.getLogger().debug("Decrypting file data with key=" + key + sectorCount);
-                rawData = frostSecurity.decryptBytes(rawData, key + sectorCount);
-                this.sectorCount = sectorCount;
-            }
-            if (rawData.length != compressedSize) {
-                context.getErrorHandler().handleError("Compressed size check failed ("
-                        + rawData.length + " vs " + compressedSize + ")");
-            }
+            rawData = readSector(sectorCount);
             isRead = true;
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
+    /**
+     * Copies this sector out of the archive and decrypts it.
+     *
+     * @param sectorCount Index of this sector in its file
+     * @return Raw (possibly compressed) sector bytes
+     */
+    private byte[] readSector(int sectorCount) {
+        // Only this sector is copied out of the archive mapping.
+        byte[] data = reader.readBytes(start + offset, end - start);
+        if (encrypted) {
+            context.getLogger().debug("Decrypting file data with key=" + key + sectorCount);
+            frostSecurity.decrypt(data, 0, data.length, key + sectorCount);
+            this.sectorCount = sectorCount;
+        }
+        if (data.length != compressedSize) {
+            context.getErrorHandler().handleError("Compressed size check failed ("
+                    + data.length + " vs " + compressedSize + ")");
+        }
+        return data;
+    }
+
+    /**
+     * Decompresses raw sector bytes, if this sector is compressed.
+     *
+     * @param data Raw sector bytes
+     * @return Decompressed sector bytes
+     */
+    private byte[] expand(byte[] data) {
+        if (compressed) {
+            byte compressionFlag = data[0];
+            // The payload after the flag byte is decompressed in place.
+            return context.getCompressionHandler().decompress(data, 1, data.length - 1,
+                    compressionFlag, realSize);
+        } else {
+            return data;
+        }
+    }
+
+    /**
+     * Reads, decrypts and decompresses this sector.
+     * The result is not kept on this object; decoded sectors are
+     * cached per archive by SectorCache.
+     *
+     * @param sectorCount Index of this sector in its file
+     * @return Decompressed sector bytes
+     */
+    public synchronized byte[] decode(int sectorCount) {
+        if (isRead) {
+            return expand(rawData);
+        }
+        return expand(readSector(sectorCount));
+    }
+
+    /**
+     * Reads, decrypts and decompresses this sector straight into
+     * part of a caller's array, without a separate sector array.
+     *
+     * @param sectorCount Index of this sector in its file
+     * @param dest        Array to write the sector into
+     * @param destOffset  Position of the sector in dest
+     * @return Number of bytes written
+     */
+    public synchronized int decodeInto(int sectorCount, byte[] dest, int destOffset) {
+        byte[] data = isRead ? rawData : readSector(sectorCount);
+        int available = dest.length - destOffset;
+        if (compressed) {
+            return context.getCompressionHandler().decompress(data, 1, data.length - 1,
+                    data[0], dest, destOffset, Math.min(realSize, available));
+        }
+        int written = Math.min(data.length, available);
+        System.arraycopy(data, 0, dest, destOffset, written);
+        return written;
+    }
+
     /**
      * Adds file data to byte buffer
      *
      * @param fileBytes Byte buffer to add to
+     * @deprecated Sectors no longer keep their decoded data; use
+     * {@link #decode(int)} or {@link #decodeInto(int, byte[], int)}.
      */
-    public void addBytes(ByteBuffer fileBytes) {
-        if (isProcessed) {
-            fileBytes.put(fileData);
-        } else {
-            if (compressed) {
-                byte compressionFlag = rawData[0];
-                fileData = ByteHelper.trimBytes(rawData, 1);
-                fileData = context.getCompressionHandler().decompress(fileData, compressionFlag, realSize);
-            } else {
-                fileData = rawData;
-            }
-            fileBytes.put(fileData);
-            isProcessed = true;
+    @Deprecated
+    public synchronized void addBytes(ByteBuffer fileBytes) {
+        if (!isRead) {
+            context.getErrorHandler().handleCriticalError
+                    ("Attempted to add bytes before reading them");
         }
+        fileBytes.put(expand(rawData));
     }
 
     /**
@@ -117,7 +174,7 @@ public final class FileSectorEntry implements IByteSerializable {
      * @return Byte array of object.
      */
     @Override
-    public byte[] toBytes() {
+    public synchronized byte[] toBytes() {
         if (!isRead) {
             context.getErrorHandler().handleCriticalError
                     ("Attempted to add bytes before reading them");
@@ -131,7 +188,6 @@ public final class FileSectorEntry implements IByteSerializable {
 
     public void setSingleSectorData(byte[] data) {
         this.rawData = data;
-        this.fileData = data;
     }
 
     public int getStart() {
@@ -206,19 +262,33 @@ public final class FileSectorEntry implements IByteSerializable {
         this.rawData = rawData;
     }
 
-    public byte[] getFileData() {
-        return fileData;
+    /**
+     * @return Decompressed data, or null if the sector wasn't read
+     * @deprecated Sectors no longer keep their decoded data; use {@link #decode(int)}.
+     */
+    @Deprecated
+    public synchronized byte[] getFileData() {
+        return isRead ? expand(rawData) : null;
     }
 
+    /**
+     * Not supported, since sectors no longer keep their decoded data.
+     * Reports a critical error instead of silently dropping the data.
+     *
+     * @param fileData Ignored
+     * @deprecated Decoded sectors are cached per archive by SectorCache.
+     */
+    @Deprecated
     public void setFileData(byte[] fileData) {
-        this.fileData = fileData;
+        context.getErrorHandler().handleCriticalError
+                ("Sector data can no longer be set directly");
     }
 
-    public BinaryReader getReader() {
+    public IArchiveReader getReader() {
         return reader;
     }
 
-    public void setReader(BinaryReader reader) {
+    public void setReader(IArchiveReader reader) {
         this.reader = reader;
     }
 
@@ -230,12 +300,26 @@ public final class FileSectorEntry implements IByteSerializable {
         isRead = read;
     }
 
+    /**
+     * @return True once the sector was read, since it can then be decoded
+     * @deprecated Sectors no longer keep their decoded data; use {@link #isRead()}.
+     */
+    @Deprecated
     public boolean isProcessed() {
-        return isProcessed;
+        return isRead;
     }
 
+    /**
+     * Not supported, since sectors no longer keep their decoded data.
+     * Reports a critical error instead of silently ignoring the flag.
+     *
+     * @param processed Ignored
+     * @deprecated Decoded sectors are cached per archive by SectorCache.
+     */
+    @Deprecated
     public void setProcessed(boolean processed) {
-        isProcessed = processed;
+        context.getErrorHandler().handleCriticalError
+                ("Sector processed state can no longer be set directly");
     }
 
     public MpqContext getContext() {
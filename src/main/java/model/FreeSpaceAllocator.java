@@ -0,0 +1,94 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds room for new blocks when an archive is updated in place.
+ * Only regions known to be free are reused: those of blocks deleted
+ * since the archive was read. Bytes nothing seems to point at are left
+ * alone, since protected archives hide data there. A new block goes into
+ * the first free region it fits in without touching a region in use, or
+ * after the end of the file, growing it.
+ */
+public final class FreeSpaceAllocator {
+
+    private final List<ReservedBlockSpace> free;
+    private final List<ReservedBlockSpace> used;
+    private int end;
+
+    /**
+     * Creates an allocator over a file.
+     *
+     * @param end Current end of the file; new blocks that don't fit in
+     *            a free region are placed from here on
+     */
+    public FreeSpaceAllocator(int end) {
+        this.end = end;
+        this.free = new ArrayList<>();
+        this.used = new ArrayList<>();
+    }
+
+    /**
+     * Marks a region as free to be reused.
+     *
+     * @param offset First byte of the region
+     * @param size   Size of the region
+     */
+    public void free(int offset, int size) {
+        if (size <= 0) {
+            return;
+        }
+        free.add(new ReservedBlockSpace(offset, size));
+    }
+
+    /**
+     * Marks a region as in use. Overrides any free region it overlaps.
+     *
+     * @param offset First byte of the region
+     * @param size   Size of the region
+     */
+    public void reserve(int offset, int size) {
+        if (size <= 0) {
+            return;
+        }
+        used.add(new ReservedBlockSpace(offset, size));
+        end = Math.max(end, offset + size);
+    }
+
+    /**
+     * Finds and reserves room for a block.
+     *
+     * @param size Size of the block
+     * @return Position of the block
+     */
+    public int allocate(int size) {
+        free.sort(Comparator.comparingInt(ReservedBlockSpace::getOffset));
+        used.sort(Comparator.comparingInt(ReservedBlockSpace::getOffset));
+        for (ReservedBlockSpace region : free) {
+            int position = region.getOffset();
+            for (ReservedBlockSpace space : used) {
+                if (space.overlaps(position, size)) {
+                    position = Math.max(position, space.getEnd());
+                }
+            }
+            if (position + size <= region.getEnd()) {
+                reserve(position, size);
+                return position;
+            }
+        }
+        int position = end;
+        reserve(position, size);
+        return position;
+    }
+
+    /**
+     * Gets the end of the file, including any blocks placed after it.
+     *
+     * @return End of file
+     */
+    public int getEnd() {
+        return end;
+    }
+}
@@ -1,21 +1,36 @@
 package model;
 
 import frost.FrostSecurity;
+import helper.MaliciousMPQHelper;
 import interfaces.IByteSerializable;
 import settings.MpqContext;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
 import static frost.FrostConstants.BYTES_PER_HASH_TABLE_ENTRY;
 import static frost.FrostConstants.HASH_TABLE_ENCRYPTION_KEY;
-import static helper.ByteHelper.*;
 
+/**
+ * The hash table of an archive.
+ * <p>
+ * Each field is stored in its own primitive array, indexed by slot.
+ * HashTableEntry objects are views over one slot; they are created
+ * when first asked for and then reused, so the same slot always
+ * gives the same entry.
+ */
 public final class HashTable implements IByteSerializable {
 
-    private List<HashTableEntry> entries;
+    private int[] filePathHashA;
+    private int[] filePathHashB;
+    private short[] language;
+    private short[] platform;
+    private int[] fileBlockIndex;
+
+    private HashTableEntry[] views;
 
     private FrostSecurity security;
     private MpqContext context;
@@ -27,7 +42,6 @@ public final class HashTable implements IByteSerializable {
      * @param encryptedHashTable Encrypted hash table (read from file)
      */
     public HashTable(FrostSecurity frostSecurity, EncryptedHashTable encryptedHashTable, MpqContext context) {
-        entries = new ArrayList<>();
         this.context = context;
         this.security = frostSecurity;
         byte[] encryptedData = encryptedHashTable.getEncryptedData();
@@ -39,18 +53,47 @@ public final class HashTable implements IByteSerializable {
                     "into table entries (size = " + decryptedData.length + ")");
         }
 
-        for (int i = 0; i < decryptedData.length / BYTES_PER_HASH_TABLE_ENTRY; i++) {
-            byte[] filePathHashA = extractBytes(decryptedData, i * BYTES_PER_HASH_TABLE_ENTRY, 4);
-            byte[] filePathHashB = extractBytes(decryptedData, 4 + (i * BYTES_PER_HASH_TABLE_ENTRY), 4);
-            byte[] language = extractBytes(decryptedData, 8 + (i * BYTES_PER_HASH_TABLE_ENTRY), 2);
-            byte[] platform = extractBytes(decryptedData, 10 + (i * BYTES_PER_HASH_TABLE_ENTRY), 2);
-            byte[] fileBlockIndex = extractBytes(decryptedData, 12 + (i * BYTES_PER_HASH_TABLE_ENTRY), 4);
-            HashTableEntry entry = new HashTableEntry(byteToInt(filePathHashA), byteToInt(filePathHashB),
-                    byteToShort(language), byteToShort(platform), byteToInt(fileBlockIndex), context);
-            entry.setCallbackId(i);
-            entries.add(entry);
+        int size = decryptedData.length / BYTES_PER_HASH_TABLE_ENTRY;
+        allocate(size);
+        ByteBuffer buffer = ByteBuffer.wrap(decryptedData).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < size; i++) {
+            filePathHashA[i] = buffer.getInt();
+            filePathHashB[i] = buffer.getInt();
+            language[i] = buffer.getShort();
+            platform[i] = buffer.getShort();
+            fileBlockIndex[i] = MaliciousMPQHelper.fixNegativeValue(buffer.getInt());
         }
-        context.getLogger().info("Hash table has " + entries.size() + " entries");
+        context.getLogger().info("Hash table has " + size + " entries");
+    }
+
+    /**
+     * Creates a hash table holding a single entry.
+     *
+     * @param filePathHashA  Name hash A
+     * @param filePathHashB  Name hash B
+     * @param language       Language
+     * @param platform       Platform
+     * @param fileBlockIndex Index into the block table
+     * @param context        MPQ context
+     */
+    HashTable(int filePathHashA, int filePathHashB, short language, short platform,
+              int fileBlockIndex, MpqContext context) {
+        this.context = context;
+        allocate(1);
+        this.filePathHashA[0] = filePathHashA;
+        this.filePathHashB[0] = filePathHashB;
+        this.language[0] = language;
+        this.platform[0] = platform;
+        this.fileBlockIndex[0] = fileBlockIndex;
+    }
+
+    private void allocate(int size) {
+        filePathHashA = new int[size];
+        filePathHashB = new int[size];
+        language = new short[size];
+        platform = new short[size];
+        fileBlockIndex = new int[size];
+        views = new HashTableEntry[size];
     }
 
     /**
@@ -61,32 +104,196 @@ public final class HashTable implements IByteSerializable {
      */
     @Override
     public byte[] toBytes() {
-        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * BYTES_PER_HASH_TABLE_ENTRY);
+        int size = fileBlockIndex.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size * BYTES_PER_HASH_TABLE_ENTRY);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
 
-        for (HashTableEntry entry : entries) {
-            buffer.put(entry.toBytes());
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(filePathHashA[i]);
+            buffer.putInt(filePathHashB[i]);
+            buffer.putShort(language[i]);
+            buffer.putShort(platform[i]);
+            buffer.putInt(fileBlockIndex[i]);
         }
 
-        EncryptedHashTable encryptedHashTable = new EncryptedHashTable(entries.size(), context);
+        EncryptedHashTable encryptedHashTable = new EncryptedHashTable(size, context);
         encryptedHashTable.encrypt(buffer.array(), security);
         return encryptedHashTable.toBytes();
     }
 
+    /**
+     * Retrieves the entries of this table as a list backed by the table.
+     * Entries are views, so changes to them change the table. Setting,
+     * adding and removing entries through the list changes the table too;
+     * adding or removing resizes it, which rewrites every slot.
+     *
+     * @return List of entries, in slot order
+     */
     public List<HashTableEntry> getEntries() {
-        return entries;
+        return new AbstractList<HashTableEntry>() {
+            @Override
+            public HashTableEntry get(int index) {
+                return HashTable.this.get(index);
+            }
+
+            @Override
+            public HashTableEntry set(int index, HashTableEntry entry) {
+                return HashTable.this.set(index, entry);
+            }
+
+            @Override
+            public void add(int index, HashTableEntry entry) {
+                List<HashTableEntry> entries = new ArrayList<>(this);
+                entries.add(index, entry);
+                setEntries(entries);
+            }
+
+            @Override
+            public HashTableEntry remove(int index) {
+                List<HashTableEntry> entries = new ArrayList<>(this);
+                HashTableEntry removed = entries.remove(index);
+                detach(removed);
+                setEntries(entries);
+                return removed;
+            }
+
+            @Override
+            public int size() {
+                return fileBlockIndex.length;
+            }
+        };
+    }
+
+    /**
+     * Replaces the entry in a slot with a copy of the provided entry.
+     * The provided entry becomes a view over the slot.
+     *
+     * @param slot  Slot index
+     * @param entry New entry
+     * @return Entry that was in the slot, no longer part of this table
+     */
+    public synchronized HashTableEntry set(int slot, HashTableEntry entry) {
+        HashTableEntry previous = get(slot);
+        if (previous == entry) {
+            return previous;
+        }
+        int hashA = entry.getFilePathHashA();
+        int hashB = entry.getFilePathHashB();
+        short entryLanguage = entry.getLanguage();
+        short entryPlatform = entry.getPlatform();
+        int blockIndex = entry.getFileBlockIndex();
+        detach(previous);
+        filePathHashA[slot] = hashA;
+        filePathHashB[slot] = hashB;
+        language[slot] = entryLanguage;
+        platform[slot] = entryPlatform;
+        fileBlockIndex[slot] = blockIndex;
+        entry.attach(this, slot);
+        views[slot] = entry;
+        return previous;
     }
 
-    public void setEntries(List<HashTableEntry> entries) {
-        this.entries = entries;
+    /**
+     * Moves an entry into a table of its own, keeping its values.
+     *
+     * @param entry Entry to detach
+     */
+    private void detach(HashTableEntry entry) {
+        entry.attach(new HashTable(entry.getFilePathHashA(), entry.getFilePathHashB(),
+                entry.getLanguage(), entry.getPlatform(), entry.getFileBlockIndex(), context), 0);
+    }
+
+    /**
+     * Replaces every entry of this table with a copy of the provided entries.
+     * The provided entries become views over this table.
+     *
+     * @param entries New entries
+     */
+    public synchronized void setEntries(List<HashTableEntry> entries) {
+        int size = entries.size();
+        int[] hashA = new int[size];
+        int[] hashB = new int[size];
+        short[] languages = new short[size];
+        short[] platforms = new short[size];
+        int[] blockIndices = new int[size];
+        for (int i = 0; i < size; i++) {
+            HashTableEntry entry = entries.get(i);
+            hashA[i] = entry.getFilePathHashA();
+            hashB[i] = entry.getFilePathHashB();
+            languages[i] = entry.getLanguage();
+            platforms[i] = entry.getPlatform();
+            blockIndices[i] = entry.getFileBlockIndex();
+        }
+        allocate(size);
+        this.filePathHashA = hashA;
+        this.filePathHashB = hashB;
+        this.language = languages;
+        this.platform = platforms;
+        this.fileBlockIndex = blockIndices;
+        for (int i = 0; i < size; i++) {
+            HashTableEntry entry = entries.get(i);
+            entry.attach(this, i);
+            views[i] = entry;
+        }
     }
 
     public long size() {
-        return entries.size();
+        return fileBlockIndex.length;
+    }
+
+    /**
+     * Retrieves the entry in a slot.
+     *
+     * @param initialEntry Slot index
+     * @return View over the slot
+     */
+    public synchronized HashTableEntry get(int initialEntry) {
+        HashTableEntry entry = views[initialEntry];
+        if (entry == null) {
+            entry = new HashTableEntry(this, initialEntry, context);
+            views[initialEntry] = entry;
+        }
+        return entry;
+    }
+
+    public int getFilePathHashA(int slot) {
+        return filePathHashA[slot];
+    }
+
+    public int getFilePathHashB(int slot) {
+        return filePathHashB[slot];
+    }
+
+    public short getLanguage(int slot) {
+        return language[slot];
+    }
+
+    public short getPlatform(int slot) {
+        return platform[slot];
+    }
+
+    public int getFileBlockIndex(int slot) {
+        return fileBlockIndex[slot];
+    }
+
+    void setFilePathHashA(int slot, int filePathHashA) {
+        this.filePathHashA[slot] = filePathHashA;
+    }
+
+    void setFilePathHashB(int slot, int filePathHashB) {
+        this.filePathHashB[slot] = filePathHashB;
+    }
+
+    void setLanguage(int slot, short language) {
+        this.language[slot] = language;
+    }
+
+    void setPlatform(int slot, short platform) {
+        this.platform[slot] = platform;
     }
 
-    public HashTableEntry get(int initialEntry) {
-        return entries.get(initialEntry);
+    void setFileBlockIndex(int slot, int fileBlockIndex) {
+        this.fileBlockIndex[slot] = fileBlockIndex;
     }
 
     public MpqContext getContext() {
@@ -8,24 +8,18 @@ import frost.FrostConstants;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+/**
+ * A single entry of the hash table.
+ * Entries are views over one slot of a {@link HashTable}; reading or
+ * changing an entry reads or changes the table.
+ */
 public final class HashTableEntry implements IByteSerializable {
 
     /**
-     * Stores hashes of file for comparison
+     * Table and slot this entry views
      */
-    private int filePathHashA;
-    private int filePathHashB;
-
-    /**
-     * We really don't care about these.
-     */
-    private short language;
-    private short platform;
-
-    /**
-     * Index into the block table to search for
-     */
-    private int fileBlockIndex;
+    private HashTable table;
+    private int index;
 
     /**
      * Array index callback for debugging
@@ -33,17 +27,41 @@ public final class HashTableEntry implements IByteSerializable {
     private int callbackId;
     private MpqContext context;
 
+    /**
+     * Creates an entry that is not part of an archive's hash table.
+     */
     public HashTableEntry(int filePathHashA, int filePathHashB,
                           short language, short platform,
                           int fileBlockIndex, MpqContext context) {
-        this.filePathHashA = filePathHashA;
-        this.filePathHashB = filePathHashB;
-        this.language = language;
-        this.platform = platform;
-        this.fileBlockIndex = MaliciousMPQHelper.fixNegativeValue(fileBlockIndex);
+        this(new HashTable(filePathHashA, filePathHashB, language, platform,
+                MaliciousMPQHelper.fixNegativeValue(fileBlockIndex), context), 0, context);
+    }
+
+    /**
+     * Creates a view over a slot of the hash table.
+     *
+     * @param table   Hash table
+     * @param index   Slot index
+     * @param context MPQ context
+     */
+    HashTableEntry(HashTable table, int index, MpqContext context) {
+        this.table = table;
+        this.index = index;
+        this.callbackId = index;
         this.context = context;
     }
 
+    /**
+     * Makes this entry a view over another table slot.
+     *
+     * @param table Hash table
+     * @param index Slot index
+     */
+    void attach(HashTable table, int index) {
+        this.table = table;
+        this.index = index;
+    }
+
     /**
      * Converts this object into a byte array which represents
      * the same state as the object.
@@ -55,53 +73,62 @@ public final class HashTableEntry implements IByteSerializable {
         ByteBuffer buffer = ByteBuffer.allocate(FrostConstants.BYTES_PER_HASH_TABLE_ENTRY);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
 
-        buffer.putInt(filePathHashA);
-        buffer.putInt(filePathHashB);
-        buffer.putShort(language);
-        buffer.putShort(platform);
-        buffer.putInt(fileBlockIndex);
+        buffer.putInt(getFilePathHashA());
+        buffer.putInt(getFilePathHashB());
+        buffer.putShort(getLanguage());
+        buffer.putShort(getPlatform());
+        buffer.putInt(getFileBlockIndex());
 
         return buffer.array();
     }
 
     public int getFilePathHashA() {
-        return filePathHashA;
+        return table.getFilePathHashA(index);
     }
 
     public int getFilePathHashB() {
-        return filePathHashB;
+        return table.getFilePathHashB(index);
     }
 
     public short getLanguage() {
-        return language;
+        return table.getLanguage(index);
     }
 
     public short getPlatform() {
-        return platform;
+        return table.getPlatform(index);
     }
 
     public int getFileBlockIndex() {
-        return fileBlockIndex;
+        return table.getFileBlockIndex(index);
     }
 
     public void setFilePathHashA(int filePathHashA) {
-        this.filePathHashA = filePathHashA;
+        table.setFilePathHashA(index, filePathHashA);
     }
 
     public void setFilePathHashB(int filePathHashB) {
-        this.filePathHashB = filePathHashB;
+        table.setFilePathHashB(index, filePathHashB);
     }
 
     public void setLanguage(short language) {
-        this.language = language;
+        table.setLanguage(index, language);
     }
 
     public void setPlatform(short platform) {
-        this.platform = platform;
+        table.setPlatform(index, platform);
     }
 
     public void setFileBlockIndex(int fileBlockIndex) {
-        this.fileBlockIndex = fileBlockIndex;
+        table.setFileBlockIndex(index, fileBlockIndex);
+    }
+
+    /**
+     * Slot of this entry in its hash table.
+     *
+     * @return Slot index
+     */
+    public int getIndex() {
+        return index;
     }
 
     public MpqContext getContext() {
@@ -1,26 +1,46 @@
 package model;
 
 import custom.PgProtectionRemover;
+import frost.FileNameHash;
 import frost.FrostSecurity;
+import helper.ChannelHelper;
 import interfaces.IByteSerializable;
+import interfaces.IChannelSerializable;
 import frost.FrostConstants;
 import frost.FrostUtility;
+import frost.ListfileResolver;
 import interfaces.IReadable;
-import com.github.zachcloud.reader.BinaryReader;
+import interfaces.IArchiveReader;
 import settings.MpqContext;
+import settings.MpqSettings;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static frost.FrostConstants.*;
 
-public final class MpqObject implements IReadable, IByteSerializable {
+public final class MpqObject implements IReadable, IByteSerializable, IChannelSerializable {
 
     private FrostUtility frostUtility;
     private FrostSecurity frostSecurity;
@@ -30,11 +50,13 @@ public final class MpqObject implements IReadable, IByteSerializable {
     private EncryptedBlockTable encryptedBlockTable;
     private EncryptedHashTable encryptedHashTable;
     private BlockTable blockTable;
-    private List<FileDataEntry> fileData;
+    // Decode state of each hash table slot, created when the file is first used.
+    private FileDataEntry[] fileData;
     private HashTable hashTable;
 
-    // Optional listfile internal to archive
-    private ListFile listfile;
+    // Optional listfile internal to archive.
+    // Null until first needed when the archive is opened in parallel mode.
+    private volatile ListFile listfile;
 
     // Burning Crusade extensions
     private ExtendedAttributes extendedAttributes;
@@ -55,9 +77,25 @@ public final class MpqObject implements IReadable, IByteSerializable {
     private int blockTableOffsetHigh;
     private int headerStart;
 
+    // Where the tables are in the file on disk. These only change
+    // when the file is written, unlike the offsets above.
+    private int diskHashTableStart;
+    private int diskBlockTableStart;
+    private int diskBlockTableEntries;
+    private long diskArchiveEnd;
+
+    // Regions of the file on disk held by blocks deleted since it was read
+    private final List<ReservedBlockSpace> freedSpace = new ArrayList<>();
+
     // Helpers
     private PgProtectionRemover pgProtectionRemover;
 
+    // Decoded sectors of every file in the archive
+    private SectorCache sectorCache;
+
+    // Reader over the archive this object was read from
+    private IArchiveReader reader;
+
     private MpqContext context;
 
     public MpqObject(MpqContext context) {
@@ -65,17 +103,20 @@ public final class MpqObject implements IReadable, IByteSerializable {
     }
 
     /**
-     * Reads from the binary reader into this model object
+     * Reads from the archive reader into this model object
      *
-     * @param reader Binary reader
+     * @param reader Archive reader
      */
     @Override
-    public void read(BinaryReader reader) {
+    public void read(IArchiveReader reader) {
         try {
+            this.reader = reader;
             // Initialize helper components
             this.pgProtectionRemover = new PgProtectionRemover();
             this.frostSecurity = new FrostSecurity();
+            this.frostSecurity.setNameHashCache(context.getSettings().getNameHashCache());
             this.frostUtility = new FrostUtility(frostSecurity, context);
+            this.sectorCache = new SectorCache(context.getSettings().getSectorCacheSize());
 
             // Read header - starts at the beginning of MPQ Archive part
             archiveHeader = new ArchiveHeader(context);
@@ -103,16 +144,29 @@ public final class MpqObject implements IReadable, IByteSerializable {
 //                pgProtected = true;
 //                archiveHeader.setHashTableEntries(archiveHeader.getHashTableEntries() - 1);
 //            }
-            readBlockTable(reader, blockTableStart);
-            readHashTable(reader, hashTableStart);
+            if (context.getSettings().getTableReadMode() == MpqSettings.TableReadMode.PARALLEL) {
+                readTablesInParallel(reader);
+            } else {
+                readBlockTable(reader, blockTableStart);
+                readHashTable(reader, hashTableStart);
+            }
+            diskHashTableStart = hashTableStart;
+            diskBlockTableStart = blockTableStart;
+            diskBlockTableEntries = archiveHeader.getBlockTableEntries();
+            diskArchiveEnd = headerStart + (archiveHeader.getArchiveSize() & 0xFFFFFFFFL);
             correctHashTableIndicies(hashTable, blockTable.getEntries().size());
 
 //            if(pgProtected) {
 //                pgProtectionRemover.removePgProtection(blockTable, hashTable, archiveHeader.getArchiveSize());
 //            }
             readFileData(reader);
-            extractInternalListfile();
-            context.getLogger().info("Successfully read " + fileData.size() + " files.");
+            if (context.getSettings().getTableReadMode() == MpqSettings.TableReadMode.PARALLEL) {
+                // Read when file names are first needed.
+                listfile = null;
+            } else {
+                listfile = extractInternalListfile();
+            }
+            context.getLogger().info("Successfully read " + countLiveEntries() + " files.");
             // TODO: Read the rest of this garbage. (extended stuff)
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -122,8 +176,8 @@ public final class MpqObject implements IReadable, IByteSerializable {
     }
 
     private void correctHashTableIndicies(HashTable hashTable, int size) {
-        for(HashTableEntry entry : hashTable.getEntries()) {
-            entry.setFileBlockIndex(entry.getFileBlockIndex() % size);
+        for (int slot = 0; slot < hashTable.size(); slot++) {
+            hashTable.setFileBlockIndex(slot, hashTable.getFileBlockIndex(slot) % size);
         }
     }
 
@@ -141,23 +195,52 @@ public final class MpqObject implements IReadable, IByteSerializable {
     /**
      * Reads the block table from the mpq
      *
-     * @param reader          Binary reader linked to map
+     * @param reader          Archive reader linked to map
      * @param blockTableStart Index of block table in the file
      */
-    private void readBlockTable(BinaryReader reader, int blockTableStart) {
+    private void readBlockTable(IArchiveReader reader, int blockTableStart) {
         reader.position(blockTableStart);
         this.encryptedBlockTable = new EncryptedBlockTable(archiveHeader.getBlockTableEntries(), context);
         encryptedBlockTable.read(reader);
         this.blockTable = new BlockTable(frostSecurity, encryptedBlockTable, context);
     }
 
+    /**
+     * Reads the encrypted hash and block tables, then decrypts and
+     * parses them at the same time: the hash table on a pool thread
+     * and the block table on this one.
+     *
+     * @param reader Archive reader linked to map
+     */
+    private void readTablesInParallel(IArchiveReader reader) {
+        reader.position(hashTableStart);
+        this.encryptedHashTable = new EncryptedHashTable(archiveHeader.getHashTableEntries(), context);
+        encryptedHashTable.read(reader);
+        reader.position(blockTableStart);
+        this.encryptedBlockTable = new EncryptedBlockTable(archiveHeader.getBlockTableEntries(), context);
+        encryptedBlockTable.read(reader);
+
+        CompletableFuture<HashTable> decodedHashTable = CompletableFuture.supplyAsync(
+                () -> new HashTable(frostSecurity, encryptedHashTable, context));
+        this.blockTable = new BlockTable(frostSecurity, encryptedBlockTable, context);
+        try {
+            this.hashTable = decodedHashTable.join();
+        } catch (CompletionException ex) {
+            // Report the original failure rather than the wrapper.
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
     /**
      * Reads the hash table from the mpq.
      *
-     * @param reader         Binary reader linked to map
+     * @param reader         Archive reader linked to map
      * @param hashTableStart Index of hash table in file
      */
-    private void readHashTable(BinaryReader reader, int hashTableStart) {
+    private void readHashTable(IArchiveReader reader, int hashTableStart) {
         reader.position(hashTableStart);
         this.encryptedHashTable = new EncryptedHashTable(archiveHeader.getHashTableEntries(), context);
         encryptedHashTable.read(reader);
@@ -165,62 +248,136 @@ public final class MpqObject implements IReadable, IByteSerializable {
     }
 
     /**
-     * Reads all of the file data entries
-     * It gets the file data entries from the hash table
+     * Prepares the file data entries.
+     * Entries are only created when a file is first used,
+     * so opening an archive doesn't build one for every file.
+     *
+     * @param reader Archive reader linked to map
+     */
+    private void readFileData(IArchiveReader reader) {
+        this.fileData = new FileDataEntry[hashTable.getEntries().size()];
+    }
+
+    /**
+     * Counts the hash table entries that point at a file.
      *
-     * @param reader Binary reader linked to map
+     * @return Number of live hash table entries
      */
-    private void readFileData(BinaryReader reader) {
-        this.fileData = new ArrayList<>();
-        int lastValidEntry = blockTable.getEntries().size();
+    private int countLiveEntries() {
+        int count = 0;
+        for (int slot = 0; slot < hashTable.size(); slot++) {
+            if (isInUse(hashTable.getFileBlockIndex(slot))) {
+                count++;
+            }
+        }
+        return count;
+    }
 
-        for (HashTableEntry hashTableEntry : hashTable.getEntries()) {
-            // We only care about entries with contents
+    /**
+     * Finds the slot of a hash table entry.
+     *
+     * @param hashTableEntry Hash table entry
+     * @return Index of the entry in the hash table, or -1
+     */
+    private int slotOf(HashTableEntry hashTableEntry) {
+        int slot = hashTableEntry.getIndex();
+        if (slot >= 0 && slot < hashTable.size() && hashTable.get(slot) == hashTableEntry) {
+            return slot;
+        }
+        return -1;
+    }
 
-            int blockTableIndex = hashTableEntry.getFileBlockIndex() % lastValidEntry;
-            if (hashTableEntry.getFileBlockIndex() != FrostConstants.MPQ_HASH_ENTRY_DELETED &&
-                    hashTableEntry.getFileBlockIndex() != FrostConstants.MPQ_HASH_ENTRY_EMPTY) {
-                // Get associated block table entry
-                if (blockTableIndex < blockTable.getEntries().size()
-                        && blockTableIndex >= 0) {
-                    BlockTableEntry blockTableEntry = blockTable.get(blockTableIndex);
-                    if (blockTableEntry.isEncrypted()) {
-                        context.getLogger().debug("Encrypted entry will be read later.");
-                    }
-                    try {
-                        FileDataEntry fileDataEntry = new FileDataEntry(headerStart, frostSecurity,
-                                blockTableEntry.getBlockOffset() + headerStart,
-                                archiveHeader, blockTableEntry, hashTableEntry, context);
-                        context.getLogger().debug("Reading block table entry position=" + hashTableEntry.getFileBlockIndex());
-                        fileDataEntry.saveReader(reader);
-                        fileData.add(fileDataEntry);
-                    } catch (Exception ex) {
-                        context.getLogger().warn("Invalid file at block " + blockTableEntry.getCallbackId());
-                    }
-                } else {
-                    context.getLogger().warn("Invalid block table entry point: " + hashTableEntry.getFileBlockIndex() + ". Ignored.");
-                }
+    /**
+     * Retrieves the file data entry of a hash table slot,
+     * creating it the first time the slot is used.
+     *
+     * @param slot Hash table slot
+     * @return File data entry, or null if the slot holds no valid file
+     */
+    private synchronized FileDataEntry fileDataAt(int slot) {
+        if (slot < 0) {
+            return null;
+        }
+        FileDataEntry fileDataEntry = fileData[slot];
+        if (fileDataEntry != null) {
+            return fileDataEntry;
+        }
+        HashTableEntry hashTableEntry = hashTable.get(slot);
+        if (!isInUse(hashTableEntry)) {
+            return null;
+        }
+        // Get associated block table entry
+        int blockTableIndex = hashTableEntry.getFileBlockIndex() % blockTable.getEntries().size();
+        if (blockTableIndex >= blockTable.getEntries().size() || blockTableIndex < 0) {
+            context.getLogger().warn("Invalid block table entry point: " + hashTableEntry.getFileBlockIndex() + ". Ignored.");
+            return null;
+        }
+        BlockTableEntry blockTableEntry = blockTable.get(blockTableIndex);
+        try {
+            fileDataEntry = new FileDataEntry(headerStart, frostSecurity,
+                    blockTableEntry.getBlockOffset() + headerStart,
+                    archiveHeader, blockTableEntry, hashTableEntry, context);
+            context.getLogger().debug("Reading block table entry position=" + hashTableEntry.getFileBlockIndex());
+            fileDataEntry.saveReader(reader);
+            fileDataEntry.setSectorCache(sectorCache);
+            fileData[slot] = fileDataEntry;
+            return fileDataEntry;
+        } catch (Exception ex) {
+            context.getLogger().warn("Invalid file at block " + blockTableEntry.getCallbackId());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the file data entry of a hash table entry.
+     *
+     * @param hashTableEntry Hash table entry of the file
+     * @return File data entry, or null if the entry holds no valid file
+     */
+    private FileDataEntry fileDataOf(HashTableEntry hashTableEntry) {
+        return fileDataAt(slotOf(hashTableEntry));
+    }
+
+    /**
+     * Creates the file data entry of every file, in hash table order.
+     * Needed before the layout of the archive is changed.
+     *
+     * @return Every file data entry
+     */
+    private List<FileDataEntry> allFileData() {
+        List<FileDataEntry> entries = new ArrayList<>();
+        for (int slot = 0; slot < fileData.length; slot++) {
+            FileDataEntry fileDataEntry = fileDataAt(slot);
+            if (fileDataEntry != null) {
+                entries.add(fileDataEntry);
             }
         }
+        return entries;
     }
 
     /**
      * Extracts and reads the internal mpq listfile.
+     *
+     * @return Listfile of the archive; empty if the archive has none
      */
-    private void extractInternalListfile() {
+    private ListFile extractInternalListfile() {
         context.getLogger().info("Attempting to read internal listfile...");
+        ListFile internalListfile;
         if (fileExists("(listfile)")) {
             // We want to do this in memory.
             String listfileData = new String(getFileBytes("(listfile)"));
-            listfile = new ListFile(listfileData, this, context);
-            addFileName("(listfile)");
-            addFileName("(attributes)");
-            context.getLogger().info("Internal listfile had " + listfile.getEntries().size()
+            internalListfile = new ListFile(listfileData, this, context);
+            internalListfile.add("(listfile)");
+            if (fileExists("(attributes)")) {
+                internalListfile.add("(attributes)");
+            }
+            context.getLogger().info("Internal listfile had " + internalListfile.getEntries().size()
                     + " entries out of " + blockTable.getEntries().size() + " total entries");
         } else {
             context.getLogger().info("No internal listfile found in archive");
-            listfile = new ListFile(context);
+            internalListfile = new ListFile(context);
         }
+        return internalListfile;
     }
 
     /**
@@ -277,37 +434,7 @@ public final class MpqObject implements IReadable, IByteSerializable {
 //                BlockTableEntry entry3 = blockTable.get(entry2.getFileBlockIndex());
 //                System.out.println(entry3);
 //            }
-            HashTableEntry entry = findEntry(fileName);
-
-            // Discover duplicates
-            int count = 0;
-            for (FileDataEntry fileDataEntry : fileData) {
-                if (fileDataEntry.getHashTableEntry() == entry) {
-                    count++;
-                }
-            }
-
-            if (count == 0) {
-                context.getLogger().warn("No file found");
-                return new byte[0];
-            } else if (count > 1) {
-                context.getLogger().warn("Multiple files found");
-            }
-
-            ByteBuffer totalBytes = ByteBuffer.allocate(0);
-            for (FileDataEntry fileDataEntry : fileData) {
-                if (fileDataEntry.getHashTableEntry() == entry) {
-                    fileDataEntry.readSelf();
-                    byte[] bytesToAdd = fileDataEntry.getFileBytes(fileName);
-                    if (bytesToAdd.length + ((Buffer) totalBytes).position() > totalBytes.capacity()) {
-                        context.getLogger().debug("Reallocating to: " + ((int)bytesToAdd.length + (int)((Buffer) totalBytes).position()));
-                        totalBytes = reallocate(totalBytes, bytesToAdd.length + ((Buffer) totalBytes).position());
-                    }
-                    context.getLogger().debug("Adding " + bytesToAdd.length + " bytes");
-                    totalBytes.put(bytesToAdd);
-                }
-            }
-            return totalBytes.array();
+            return decodeFileBytes(fileName);
         } catch (Exception ex) {
             context.getErrorHandler().handleError("Could not add bytes to " +
                     "final file due to: " + ex.getMessage());
@@ -316,6 +443,58 @@ public final class MpqObject implements IReadable, IByteSerializable {
         }
     }
 
+    /**
+     * Decodes the specified file, letting any failure reach the caller.
+     *
+     * @param fileName File name to decode
+     * @return Uncompressed file data; empty if the file doesn't exist
+     */
+    private byte[] decodeFileBytes(String fileName) {
+        HashTableEntry entry = findEntry(fileName);
+        FileDataEntry fileDataEntry = fileDataOf(entry);
+        if (fileDataEntry == null) {
+            context.getLogger().warn("No file found");
+            return new byte[0];
+        }
+        fileDataEntry.readSelf();
+        return fileDataEntry.getFileBytes(fileName);
+    }
+
+    /**
+     * Reads a range of the specified file.
+     * Only the sectors covering the range are decoded.
+     *
+     * @param fileName File name to read
+     * @param offset   First byte to read
+     * @param length   Number of bytes to read
+     * @return Uncompressed file data in the range
+     */
+    public byte[] read(String fileName, int offset, int length) {
+        FileDataEntry fileDataEntry = fileDataOf(findEntry(fileName));
+        if (fileDataEntry == null) {
+            context.getLogger().warn("No file found");
+            return new byte[0];
+        }
+        return fileDataEntry.read(fileName, offset, length);
+    }
+
+    /**
+     * Opens a stream over the specified file.
+     * Sectors are decoded as the stream reaches them, so only one
+     * sector of the file is held in memory at a time.
+     *
+     * @param fileName File name to read
+     * @return Stream of uncompressed file data
+     */
+    public InputStream openStream(String fileName) {
+        FileDataEntry fileDataEntry = fileDataOf(findEntry(fileName));
+        if (fileDataEntry == null) {
+            context.getLogger().warn("No file found");
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return fileDataEntry.openStream(fileName);
+    }
+
     private List<HashTableEntry> findEntries(String fileName) {
         return frostUtility.findEntries
                 (hashTable, fileName, FrostConstants.ANY_LANGUAGE, FrostConstants.ANY_PLATFORM);
@@ -324,9 +503,14 @@ public final class MpqObject implements IReadable, IByteSerializable {
     /**
      * Converts this object into a byte array which represents
      * the same state as the object.
+     * The whole archive is built in memory at once.
      *
      * @return Byte array of object.
+     * @deprecated Holds the whole archive on the heap, and can't place
+     * blocks that lie past the compacted archive; use
+     * {@link #writeTo(FileChannel)} to stream it instead.
      */
+    @Deprecated
     @Override
     public byte[] toBytes() {
         reorganizeArchive();
@@ -343,8 +527,7 @@ public final class MpqObject implements IReadable, IByteSerializable {
         ((Buffer) archiveBytes).position(hashTableStart);
         nextToAdd = hashTable.toBytes();
         archiveBytes.put(nextToAdd);
-        for (int i = 0; i < fileData.size(); i++) {
-            FileDataEntry fileDataEntry = fileData.get(i);
+        for (FileDataEntry fileDataEntry : allFileData()) {
             ((Buffer) archiveBytes).position(fileDataEntry.getInitialPosition());
             nextToAdd = fileDataEntry.toBytes();
             archiveBytes.put(nextToAdd);
@@ -352,6 +535,102 @@ public final class MpqObject implements IReadable, IByteSerializable {
         return archiveBytes.array();
     }
 
+    /**
+     * Writes this archive to the channel, piece by piece.
+     * File data is copied block by block from the source archive,
+     * so the archive is never held in memory as a whole.
+     *
+     * @param channel Channel to write to
+     * @throws IOException If the channel can't be written to.
+     */
+    @Override
+    public void writeTo(FileChannel channel) throws IOException {
+        reorganizeArchive();
+        ChannelHelper.writeFully(channel, 0, ByteBuffer.wrap(preHeader),
+                ByteBuffer.wrap(archiveHeader.toBytes()));
+        // Untouched blocks are copied file to file, without passing through the heap.
+        try (FileChannel source = reader.openChannel()) {
+            for (FileDataEntry fileDataEntry : allFileData()) {
+                fileDataEntry.writeTo(channel, source);
+            }
+        }
+        ChannelHelper.writeFully(channel, hashTableStart, ByteBuffer.wrap(hashTable.toBytes()));
+        ChannelHelper.writeFully(channel, blockTableStart, ByteBuffer.wrap(blockTable.toBytes()));
+    }
+
+    /**
+     * Writes changes to the archive's own file, without rewriting it.
+     * Blocks already in the file stay where they are. New blocks go into
+     * space freed by files deleted since the archive was read, or after
+     * the end of the archive and the file, whichever is later. Other
+     * bytes no block points at are kept, as protected archives may hide
+     * data there. The hash
+     * table is rewritten where it is. The block table is rewritten where
+     * it is if it still fits, and moved if it doesn't. The header is
+     * patched last.
+     *
+     * @param channel Read/write channel over the file this archive was read from
+     * @throws IOException If the channel can't be written to.
+     */
+    public void writeChanges(FileChannel channel) throws IOException {
+        int headerSize = archiveHeader.toBytes().length;
+        long end = Math.max(channel.size(), diskArchiveEnd);
+        if (end > Integer.MAX_VALUE) {
+            context.getLogger().warn("Archive size " + diskArchiveEnd + " is out of range; appending at end of file");
+            end = channel.size();
+        }
+        FreeSpaceAllocator allocator = new FreeSpaceAllocator((int) end);
+        allocator.reserve(headerStart, headerSize);
+        for (ReservedBlockSpace space : freedSpace) {
+            allocator.free(space.getOffset(), space.getSize());
+        }
+
+        // Blocks from the file keep their place, even if a full save moved them in memory.
+        List<FileDataEntry> newEntries = new ArrayList<>();
+        for (FileDataEntry entry : allFileData()) {
+            if (entry.isUnchanged()) {
+                allocator.reserve(entry.getSourcePosition(), entry.getByteSize());
+                entry.setOffsetPosition(entry.getSourcePosition());
+                entry.getBlockTableEntry().setBlockOffset(entry.getSourcePosition() - headerStart);
+            } else {
+                newEntries.add(entry);
+            }
+        }
+        int hashTableSize = (int) hashTable.size() * FrostConstants.BYTES_PER_HASH_TABLE_ENTRY;
+        int blockTableSize = blockTable.getEntries().size() * FrostConstants.BYTES_PER_BLOCK_TABLE_ENTRY;
+        allocator.reserve(diskHashTableStart, hashTableSize);
+        boolean blockTableFits = blockTable.getEntries().size() <= diskBlockTableEntries;
+        if (blockTableFits) {
+            allocator.reserve(diskBlockTableStart, blockTableSize);
+        }
+
+        for (FileDataEntry entry : newEntries) {
+            int position = allocator.allocate(entry.getByteSize());
+            entry.setOffsetPosition(position);
+            entry.getBlockTableEntry().setBlockOffset(position - headerStart);
+            context.getLogger().debug("Placed " + entry.getByteSize() + " bytes at " + position);
+            entry.writeTo(channel);
+        }
+        int newBlockTableStart = blockTableFits ? diskBlockTableStart : allocator.allocate(blockTableSize);
+
+        ChannelHelper.writeFully(channel, diskHashTableStart, ByteBuffer.wrap(hashTable.toBytes()));
+        ChannelHelper.writeFully(channel, newBlockTableStart, ByteBuffer.wrap(blockTable.toBytes()));
+
+        archiveHeader.setHashTableOffset(diskHashTableStart - headerStart);
+        archiveHeader.setBlockTableOffset(newBlockTableStart - headerStart);
+        archiveHeader.setBlockTableEntries(blockTable.getEntries().size());
+        archiveHeader.setArchiveSize(allocator.getEnd() - headerStart);
+        calculateOffsets();
+        ChannelHelper.writeFully(channel, headerStart, ByteBuffer.wrap(archiveHeader.toBytes()));
+        channel.force(true);
+
+        diskBlockTableStart = newBlockTableStart;
+        diskBlockTableEntries = blockTable.getEntries().size();
+        diskArchiveEnd = allocator.getEnd();
+        freedSpace.clear();
+        context.getLogger().debug("Updated archive in place (" + newEntries.size() + " new blocks)");
+    }
+
     /**
      * Extracts the specified file to the target file
      *
@@ -359,7 +638,16 @@ public final class MpqObject implements IReadable, IByteSerializable {
      * @param target   Target file to write to
      */
     public void extractFile(String fileName, File target) {
-        byte[] data = getFileBytes(fileName);
+        writeFile(getFileBytes(fileName), target);
+    }
+
+    /**
+     * Writes extracted file data to disk.
+     *
+     * @param data   File data
+     * @param target Target file to write to
+     */
+    private void writeFile(byte[] data, File target) {
         try {
             context.getFileWriter().write(data, target);
         } catch (IOException ex) {
@@ -394,7 +682,7 @@ public final class MpqObject implements IReadable, IByteSerializable {
      * @return Number of known files.
      */
     public int getKnownFileCount() {
-        return listfile.getEntries().size();
+        return getListfile().getEntries().size();
     }
 
     /**
@@ -403,7 +691,7 @@ public final class MpqObject implements IReadable, IByteSerializable {
      * @return Number of unknown files
      */
     public int getUnknownFileCount() {
-        return blockTable.getEntries().size() - listfile.getEntries().size();
+        return blockTable.getEntries().size() - getListfile().getEntries().size();
     }
 
     /**
@@ -414,23 +702,118 @@ public final class MpqObject implements IReadable, IByteSerializable {
      */
     public boolean addFileName(String fileName) {
         if (fileExists(fileName)) {
-            listfile.add(fileName);
+            getListfile().add(fileName);
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Adds every file whose name the resolver knows to the list
+     * of known archive files.
+     *
+     * @param resolver Resolver loaded with candidate names
+     * @return Number of file names found in this archive
+     */
+    public int addFileNames(ListfileResolver resolver) {
+        Set<String> names = resolver.resolve(hashTable);
+        getListfile().getEntries().addAll(names);
+        return names.size();
+    }
+
     /**
      * Extracts all known files.
+     * With more than one extraction thread, files are decoded whole: up
+     * to (threads * 3) decoded files are held in memory at once, one per
+     * decoding thread and (threads * 2) waiting to be written.
      */
     public void extractAllKnown() {
         int unknownCount = getUnknownFileCount();
         if (unknownCount > 0) {
             context.getLogger().warn("Unknown files will not be extracted (count=" + unknownCount + ")");
         }
-        for (String entry : listfile.getEntries()) {
-            extractFile(entry);
+        int threads = context.getSettings().getExtractionThreads();
+        if (threads <= 1) {
+            for (String entry : getListfile().getEntries()) {
+                extractFile(entry);
+            }
+        } else {
+            extractInParallel(new ArrayList<>(getListfile().getEntries()), threads);
+        }
+    }
+
+    /**
+     * Extracts files with a pool of decoding threads feeding a single writer.
+     * Each decoder reads, decrypts and decompresses a whole file, then hands
+     * it to the writer through a bounded queue. When the disk falls behind,
+     * decoders block on the queue, so at most (threads * 3) decoded files
+     * are held in memory at once.
+     *
+     * @param fileNames Files to extract
+     * @param threads   Number of decoding threads
+     */
+    private void extractInParallel(List<String> fileNames, int threads) {
+        BlockingQueue<ExtractedFile> decoded = new ArrayBlockingQueue<>(threads * 2);
+        ExecutorService decoders = Executors.newFixedThreadPool(threads);
+        try {
+            for (String fileName : fileNames) {
+                decoders.execute(() -> decodeFile(fileName, decoded));
+            }
+            for (int i = 0; i < fileNames.size(); i++) {
+                ExtractedFile file = decoded.take();
+                if (file.error != null) {
+                    context.getErrorHandler().handleCriticalError("Could not extract "
+                            + file.fileName + ": " + file.error.getMessage());
+                } else {
+                    writeFile(file.data, new File("out/" + file.fileName));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            context.getErrorHandler().handleCriticalError("Interrupted while extracting files");
+        } finally {
+            // Also releases any decoders still waiting on the queue.
+            decoders.shutdownNow();
+        }
+    }
+
+    /**
+     * Decodes one file and queues it for writing.
+     * Failures are queued too, so the writer can report them; the writer
+     * takes one entry per file, so one is queued whatever happens.
+     *
+     * @param fileName File to decode
+     * @param decoded  Queue of files waiting to be written
+     */
+    private void decodeFile(String fileName, BlockingQueue<ExtractedFile> decoded) {
+        ExtractedFile file;
+        try {
+            file = new ExtractedFile(fileName, decodeFileBytes(fileName), null);
+        } catch (Throwable ex) {
+            file = new ExtractedFile(fileName, null, ex);
+        }
+        try {
+            decoded.put(file);
+        } catch (InterruptedException ex) {
+            // The writer gave up; nothing is waiting for this file.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A decoded file waiting to be written to disk.
+     */
+    private static final class ExtractedFile {
+
+        private final String fileName;
+        private final byte[] data;
+        private final Throwable error;
+
+        private ExtractedFile(String fileName, byte[] data, Throwable error) {
+            this.fileName = fileName;
+            this.data = data;
+            this.error = error;
         }
     }
 
@@ -442,59 +825,97 @@ public final class MpqObject implements IReadable, IByteSerializable {
      * @param data File bytes
      */
     public void importFile(String name, byte[] data) {
-        reorganizeArchive();
         // First, delete file if it exists.
         context.getLogger().debug("Attempting to delete file: " + name);
         delete(name);
+        addFile(name, data);
+    }
+
+    /**
+     * Imports many files into the archive at once.
+     * Files that already exist are replaced. Replaced files are deleted
+     * in one pass, so block indices are renumbered once for the whole
+     * batch rather than once per file. The layout is computed when the
+     * archive is saved.
+     *
+     * @param files File names and their bytes, imported in map order
+     */
+    public void importFiles(Map<String, byte[]> files) {
+        deleteFiles(files.keySet());
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            addFile(file.getKey(), file.getValue());
+        }
+        context.getLogger().debug("Imported " + files.size() + " files");
+    }
+
+    /**
+     * Adds a file that is not in the archive yet.
+     *
+     * @param name File name to add
+     * @param data File bytes
+     */
+    private void addFile(String name, byte[] data) {
         // See if we have empty space to add this file in.
-        HashTableEntry blankHashtableEntry = findAvailableHashtableEntry(name);
-        if (blankHashtableEntry == null) {
+        FileNameHash hash = frostSecurity.hashAll(name);
+        int slot = findAvailableHashtableEntry(hash);
+        if (slot < 0) {
             context.getErrorHandler().handleCriticalError("Not written yet (reallocate hashtable)");
             return;
         }
+        HashTableEntry blankHashtableEntry = hashTable.get(slot);
 
         // Create a new block table entry for this file.
         // Block offset will be fixed later when we rebuild it.
+        // Compressed files are split into sectors; otherwise the file is a single unit.
+        boolean compressed = data.length > 0 && context.getSettings().getCompressionSettings()
+                != MpqSettings.CompressionSettings.NONE;
         BlockTableEntry blockTableEntry = new BlockTableEntry(-1, data.length,
-                data.length, 0x80000000 + 0x01000000, context);
+                data.length, compressed ? 0x80000000 + 0x00000200 : 0x80000000 + 0x01000000, context);
         // Set up our new hash table entry
         // We don't need to add it, since it already existed. It was just blank before.
         int blockTableIndex = blockTable.addEntry(blockTableEntry);
-        int hashA = frostSecurity.hashAsInt(name, MPQ_HASH_NAME_A);
-        int hashB = frostSecurity.hashAsInt(name, MPQ_HASH_NAME_B);
         blankHashtableEntry.setContext(context);
+        blankHashtableEntry.setCallbackId(slot);
         blankHashtableEntry.setFileBlockIndex(blockTableIndex);
-        blankHashtableEntry.setFilePathHashA(hashA);
-        blankHashtableEntry.setFilePathHashB(hashB);
+        blankHashtableEntry.setFilePathHashA(hash.getNameA());
+        blankHashtableEntry.setFilePathHashB(hash.getNameB());
         blankHashtableEntry.setLanguage((short) 0);
         blankHashtableEntry.setPlatform((short) 0);
         // Now we'll set up our new File Data Entry
 
         FileDataEntry dataEntry = new FileDataEntry(headerStart, frostSecurity, -1,
                 archiveHeader, blockTableEntry, blankHashtableEntry, context);
-        dataEntry.setSingleSectorData(data);
-        fileData.add(dataEntry);
+        if (compressed && !dataEntry.setCompressedSectorData(data)) {
+            compressed = false;
+            blockTableEntry.setFlags(0x80000000 + 0x01000000);
+        }
+        if (!compressed) {
+            dataEntry.setSingleSectorData(data);
+        }
+        dataEntry.setSectorCache(sectorCache);
+        fileData[slot] = dataEntry;
         // Increase the block table size since we added a new entry
         // First, push back the hash table if we need to.
         int bytesRequired = FrostConstants.BYTES_PER_BLOCK_TABLE_ENTRY;
         archiveHeader.setBlockTableEntries(archiveHeader.getBlockTableEntries() + 1);
 
         // Finally, increase the archive size.
-        this.archiveHeader.setArchiveSize(1 + archiveHeader.getArchiveSize() + data.length + bytesRequired);
-        context.getLogger().debug("Added a single sector entry of " + data.length + " bytes");
-        reorganizeArchive();
-        context.getLogger().debug("Rebuilt MPQ after importing file.");
+        this.archiveHeader.setArchiveSize(1 + archiveHeader.getArchiveSize()
+                + blockTableEntry.getBlockSize() + bytesRequired);
+        // The block is placed when the archive is saved.
+        context.getLogger().debug("Added a " + (compressed ? "compressed" : "single sector")
+                + " entry of " + data.length + " bytes (" + blockTableEntry.getBlockSize() + " stored)");
     }
 
     /**
      * Finds the first available hash table entry to put
-     * this file in, or null if none exists.
+     * this file in, or -1 if none exists.
      *
-     * @param fileName File name of file to add
-     * @return An available (blank) hash table entry, or null
+     * @param hash Hashes of the file name to add
+     * @return Slot of an available (blank) hash table entry, or -1
      */
-    private HashTableEntry findAvailableHashtableEntry(String fileName) {
-        long initialEntry = (frostSecurity.hashAsInt(fileName, MPQ_HASH_TABLE_OFFSET) & (hashTable.size() - 1));
+    private int findAvailableHashtableEntry(FileNameHash hash) {
+        long initialEntry = (hash.getTableOffset() & (hashTable.size() - 1));
         int i = (int) initialEntry;
         int count = 0;
         int maxSize = (int) hashTable.size();
@@ -507,13 +928,13 @@ public final class MpqObject implements IReadable, IByteSerializable {
             if (entry.getFileBlockIndex() == FrostConstants.MPQ_HASH_ENTRY_DELETED ||
                     entry.getFileBlockIndex() == FrostConstants.MPQ_HASH_ENTRY_EMPTY) {
                 context.getLogger().debug("Found an available hashtable entry at " + i);
-                return entry;
+                return i;
             }
             context.getLogger().debug("Entry " + i + " is unavailable.");
             i++;
             count++;
         }
-        return null;
+        return -1;
     }
 
     /**
@@ -523,14 +944,18 @@ public final class MpqObject implements IReadable, IByteSerializable {
      * Places block table after hash table
      */
     public void reorganizeArchive() {
+        // Blocks move, and key-adjusted ones are read again from their new place.
+        sectorCache.clear();
         // Calculate new values for the header.
         int newHeaderStart = preHeader.length;
         int newBlockTableSize = blockTable.getEntries().size();
 
         int currentPosition = newHeaderStart + 32;
+        // Every entry needs its source position before blocks are moved.
+        List<FileDataEntry> entries = allFileData();
         // Discover reserved space.
         List<ReservedBlockSpace> reservedBlockSpaces = new ArrayList<>();
-        for (FileDataEntry entry : fileData) {
+        for (FileDataEntry entry : entries) {
             if (entry.getBlockTableEntry().isEncrypted() && entry.getBlockTableEntry().isKeyAdjusted()) {
                 reservedBlockSpaces.add(new ReservedBlockSpace(entry.getBlockTableEntry().getBlockOffset()
                         , entry.getBlockTableEntry().getBlockSize()));
@@ -538,32 +963,37 @@ public final class MpqObject implements IReadable, IByteSerializable {
         }
 
         // Allocate space for each file data entry
-        for (FileDataEntry entry : fileData) {
-            int newFileOffset = currentPosition;
-            int size = entry.getByteSize();
-            currentPosition += size;
-            // See if this block is reserved
-            for (ReservedBlockSpace reservedBlockSpace : reservedBlockSpaces) {
-                context.getLogger().debug("Comparing for intersection: " + (currentPosition - newHeaderStart) + " and " + reservedBlockSpace.toString());
-                if (reservedBlockSpace.intersects(currentPosition - newHeaderStart + size) || reservedBlockSpace.intersects(currentPosition - newHeaderStart)) {
-                    context.getLogger().debug("Skipping " + size + " bytes due to reserved mpq space");
-                    currentPosition += size + entry.getBlockTableEntry().getBlockSize();
-                    newFileOffset += size + entry.getBlockTableEntry().getBlockSize();
-                }
-            }
-
+        for (FileDataEntry entry : entries) {
             if (entry.getBlockTableEntry().isEncrypted() && entry.getBlockTableEntry().isKeyAdjusted()) {
                 // We need to leave these alone since the encryption
                 // uses the block offset in the key!
                 context.getLogger().debug("Skipping reserved space for encrypted entry");
-            } else {
-                entry.readAll();
-                entry.setOffsetPosition(newFileOffset);
-                // Block offset factors in the header start automatically.
-                entry.getBlockTableEntry().setBlockOffset(newFileOffset - newHeaderStart);
-                context.getLogger().debug("Reallocated " + size + " bytes for a block at " + newFileOffset);
-
+                continue;
             }
+            int size = entry.getByteSize();
+            int blockOffset = currentPosition - newHeaderStart;
+            // Move past any reserved block this one would overlap.
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                for (ReservedBlockSpace reservedBlockSpace : reservedBlockSpaces) {
+                    if (reservedBlockSpace.overlaps(blockOffset, size)) {
+                        context.getLogger().debug("Skipping " + reservedBlockSpace + " due to reserved mpq space");
+                        blockOffset = reservedBlockSpace.getEnd();
+                        moved = true;
+                    }
+                }
+            }
+            int newFileOffset = blockOffset + newHeaderStart;
+            currentPosition = newFileOffset + size;
+            entry.setOffsetPosition(newFileOffset);
+            // Block offset factors in the header start automatically.
+            entry.getBlockTableEntry().setBlockOffset(blockOffset);
+            context.getLogger().debug("Reallocated " + size + " bytes for a block at " + newFileOffset);
+        }
+        // Tables go after every block, including the ones that stayed in place.
+        for (ReservedBlockSpace reservedBlockSpace : reservedBlockSpaces) {
+            currentPosition = Math.max(currentPosition, reservedBlockSpace.getEnd() + newHeaderStart);
         }
 
         archiveHeader.setHashTableOffset(currentPosition);
@@ -585,49 +1015,112 @@ public final class MpqObject implements IReadable, IByteSerializable {
      * returns false if the file didn't exist
      */
     public boolean delete(String name) {
-        if (!fileExists(name)) {
-            context.getLogger().info("File did not exist in mpq: " + name);
-            return false;
-        }
-        context.getLogger().info("Deleting file from archive: " + name);
+        return deleteFiles(Collections.singleton(name)) > 0;
+    }
 
-        context.getLogger().debug("Locating hash table entry");
-        HashTableEntry entry = frostUtility.findEntry
-                (hashTable, name, FrostConstants.ANY_LANGUAGE, FrostConstants.ANY_PLATFORM);
-        int whichBlockTableEntry = entry.getFileBlockIndex() % blockTable.getEntries().size();
-        context.getLogger().debug("Found hash entry as #" + entry.getCallbackId());
-        context.getLogger().debug("Associated block table entry is #" + whichBlockTableEntry + "(from " + entry.getFileBlockIndex() + ")");
-        int indexToRemove = -1;
-        for (int i = 0; i < fileData.size(); i++) {
-            FileDataEntry fileDataEntry = fileData.get(i);
-            if (fileDataEntry.getHashTableEntry() == entry) {
-                context.getLogger().debug("Deleting entry with block index #" + entry.getFileBlockIndex());
-                indexToRemove = i;
+    /**
+     * Deletes many files from the archive at once.
+     * Blocks no longer used by any hash table entry are removed from the
+     * block table, and the remaining block indices are renumbered in a
+     * single pass over the hash table.
+     *
+     * @param names Filenames to delete
+     * @return Number of files deleted. Files that didn't exist are skipped.
+     */
+    public int deleteFiles(Collection<String> names) {
+        int blockCount = blockTable.getEntries().size();
+        Set<HashTableEntry> deletedEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Integer> freedBlocks = new HashSet<>();
+        Map<Integer, FileDataEntry> freedData = new HashMap<>();
+        for (String name : names) {
+            HashTableEntry entry = frostUtility.findEntry
+                    (hashTable, name, FrostConstants.ANY_LANGUAGE, FrostConstants.ANY_PLATFORM);
+            if (entry == null) {
+                context.getLogger().info("File did not exist in mpq: " + name);
+                continue;
+            }
+            context.getLogger().info("Deleting file from archive: " + name);
+            int whichBlockTableEntry = entry.getFileBlockIndex() % blockCount;
+            context.getLogger().debug("Found hash entry as #" + entry.getCallbackId());
+            context.getLogger().debug("Associated block table entry is #" + whichBlockTableEntry + "(from " + entry.getFileBlockIndex() + ")");
+            freedBlocks.add(whichBlockTableEntry);
+            deletedEntries.add(entry);
+            int slot = slotOf(entry);
+            FileDataEntry dataEntry = fileDataAt(slot);
+            if (dataEntry != null) {
+                freedData.put(whichBlockTableEntry, dataEntry);
+            }
+            if (slot >= 0) {
+                fileData[slot] = null;
+            }
+
+            context.getLogger().debug("Nulling out hash table entry");
+            entry.setPlatform((short) -1);
+            entry.setLanguage((short) -1);
+            entry.setCallbackId(-1);
+            entry.setContext(null);
+            // Marked as deleted (not empty) so that probe chains running
+            // through this slot still reach the entries after it.
+            entry.setFileBlockIndex(FrostConstants.MPQ_HASH_ENTRY_DELETED);
+            entry.setFilePathHashA(-1);
+            entry.setFilePathHashB(-1);
+        }
+        if (deletedEntries.isEmpty()) {
+            return 0;
+        }
+        context.getLogger().debug("Cleaning out block table entries");
+        // Sectors of the deleted files are no longer needed.
+        sectorCache.clear();
+        // A block stays if another hash table entry still points at it.
+        int hashTableSize = (int) hashTable.size();
+        for (int slot = 0; slot < hashTableSize; slot++) {
+            int blockIndex = hashTable.getFileBlockIndex(slot);
+            if (isInUse(blockIndex)) {
+                freedBlocks.remove(blockIndex % blockCount);
+            }
+        }
+        boolean[] removed = new boolean[blockCount];
+        for (int blockIndex : freedBlocks) {
+            removed[blockIndex] = true;
+            // Only a block that is in the file on disk frees any space there.
+            FileDataEntry dataEntry = freedData.get(blockIndex);
+            if (dataEntry != null && dataEntry.isUnchanged()) {
+                freedSpace.add(new ReservedBlockSpace(dataEntry.getSourcePosition(),
+                        dataEntry.getBlockTableEntry().getBlockSize()));
             }
         }
-        if (indexToRemove >= 0) {
-            context.getLogger().debug("Removing file data #" + indexToRemove);
-            fileData.remove(indexToRemove);
-        }
-        context.getLogger().debug("Nulling out hash table entry");
-        entry.setPlatform((short) -1);
-        entry.setLanguage((short) -1);
-        entry.setCallbackId(-1);
-        entry.setContext(null);
-        entry.setFileBlockIndex(-1);
-        entry.setFilePathHashA(-1);
-        entry.setFilePathHashB(-1);
-        context.getLogger().debug("Cleaning out block table entry");
-        for (HashTableEntry hashTableEntry : hashTable.getEntries()) {
-            int correctedIndex = hashTableEntry.getFileBlockIndex() % blockTable.getEntries().size();
-            if (correctedIndex >= indexToRemove) {
-                correctedIndex--;
+        // Block table entries still in use follow their block to its new index.
+        int[] newIndex = blockTable.removeEntries(removed);
+        for (int slot = 0; slot < hashTableSize; slot++) {
+            int blockIndex = hashTable.getFileBlockIndex(slot);
+            if (isInUse(blockIndex)) {
+                hashTable.setFileBlockIndex(slot, newIndex[blockIndex % blockCount]);
             }
-            hashTableEntry.setFileBlockIndex(correctedIndex);
         }
-        blockTable.getEntries().remove(indexToRemove);
-        context.getLogger().debug("File removes successfully");
-        return true;
+        context.getLogger().debug("Removed " + deletedEntries.size() + " files and "
+                + freedBlocks.size() + " blocks");
+        return deletedEntries.size();
+    }
+
+    /**
+     * Determines if a hash table entry points at a block.
+     *
+     * @param entry Hash table entry
+     * @return False if the entry is empty or deleted
+     */
+    private boolean isInUse(HashTableEntry entry) {
+        return isInUse(entry.getFileBlockIndex());
+    }
+
+    /**
+     * Determines if a hash table block index points at a block.
+     *
+     * @param fileBlockIndex Block index of a hash table entry
+     * @return False if the index marks an empty or deleted entry
+     */
+    private static boolean isInUse(int fileBlockIndex) {
+        return fileBlockIndex != FrostConstants.MPQ_HASH_ENTRY_DELETED &&
+                fileBlockIndex != FrostConstants.MPQ_HASH_ENTRY_EMPTY;
     }
 
     /**
@@ -636,7 +1129,23 @@ public final class MpqObject implements IReadable, IByteSerializable {
      * @return Set of known file names
      */
     public Set<String> getFileNames() {
-        return listfile.getEntries();
+        return getListfile().getEntries();
+    }
+
+    public SectorCache getSectorCache() {
+        return sectorCache;
+    }
+
+    public void setSectorCache(SectorCache sectorCache) {
+        this.sectorCache = sectorCache;
+    }
+
+    public IArchiveReader getReader() {
+        return reader;
+    }
+
+    public void setReader(IArchiveReader reader) {
+        this.reader = reader;
     }
 
     public FrostUtility getFrostUtility() {
@@ -687,12 +1196,30 @@ public final class MpqObject implements IReadable, IByteSerializable {
         this.blockTable = blockTable;
     }
 
+    /**
+     * Retrieves the file data entry of every file,
+     * creating any that haven't been used yet.
+     *
+     * @return File data entries in hash table order
+     */
     public List<FileDataEntry> getFileData() {
-        return fileData;
+        return allFileData();
     }
 
+    /**
+     * Replaces the file data entries. Each entry is stored
+     * at the slot of its hash table entry.
+     *
+     * @param fileData File data entries
+     */
     public void setFileData(List<FileDataEntry> fileData) {
-        this.fileData = fileData;
+        this.fileData = new FileDataEntry[hashTable.getEntries().size()];
+        for (FileDataEntry fileDataEntry : fileData) {
+            int slot = slotOf(fileDataEntry.getHashTableEntry());
+            if (slot >= 0) {
+                this.fileData[slot] = fileDataEntry;
+            }
+        }
     }
 
     public HashTable getHashTable() {
@@ -703,8 +1230,23 @@ public final class MpqObject implements IReadable, IByteSerializable {
         this.hashTable = hashTable;
     }
 
+    /**
+     * Retrieves the listfile of known file names, reading the
+     * internal listfile first if that was deferred when opening.
+     *
+     * @return Listfile
+     */
     public ListFile getListfile() {
-        return listfile;
+        ListFile current = listfile;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (listfile == null) {
+                listfile = extractInternalListfile();
+            }
+            return listfile;
+        }
     }
 
     public void setListfile(ListFile listfile) {
@@ -9,6 +9,26 @@ public final class ReservedBlockSpace {
         return (position >= offset && position <= offset + size);
     }
 
+    /**
+     * Determines if a block would overlap this space.
+     *
+     * @param position Start of the block
+     * @param length   Size of the block
+     * @return True if the block and this space share any byte
+     */
+    public boolean overlaps(int position, int length) {
+        return position < offset + size && offset < position + length;
+    }
+
+    /**
+     * First position after this space.
+     *
+     * @return End of the space
+     */
+    public int getEnd() {
+        return offset + size;
+    }
+
     public ReservedBlockSpace(int offset, int size) {
         this.offset = offset;
         this.size = size;
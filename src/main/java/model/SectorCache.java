@@ -0,0 +1,137 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of decoded (decrypted and decompressed)
+ * sectors, shared by every file in an archive.
+ * <p>
+ * Sectors are keyed by the file they were decoded for and sector index.
+ * Not by block: hash table entries of different names may share a block
+ * in protected archives, and decrypting it with each name's key gives
+ * different sectors. The cache
+ * holds at most the configured number of bytes of sector data; the
+ * least recently used sectors are evicted to make room. Cached arrays
+ * are shared, so callers must not modify them.
+ */
+public final class SectorCache {
+
+    private final long capacity;
+    private final LinkedHashMap<SectorKey, byte[]> sectors;
+    private long size;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a sector cache.
+     *
+     * @param capacity Maximum bytes of sector data to hold.
+     *                 0 disables caching.
+     */
+    public SectorCache(long capacity) {
+        this.capacity = capacity;
+        // Access order makes iteration run from least to most recently used.
+        this.sectors = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+
+    /**
+     * Looks up a decoded sector.
+     *
+     * @param file        File the sector belongs to
+     * @param sectorIndex Index of the sector in the file
+     * @return Decoded sector, or null if it isn't cached
+     */
+    public synchronized byte[] get(FileDataEntry file, int sectorIndex) {
+        byte[] data = sectors.get(new SectorKey(file, sectorIndex));
+        if (data == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return data;
+    }
+
+    /**
+     * Caches a decoded sector, evicting the least recently used
+     * sectors if the cache is over its capacity.
+     * Sectors larger than the whole capacity are not cached.
+     *
+     * @param file        File the sector belongs to
+     * @param sectorIndex Index of the sector in the file
+     * @param data        Decoded sector
+     */
+    public synchronized void put(FileDataEntry file, int sectorIndex, byte[] data) {
+        if (data.length > capacity) {
+            return;
+        }
+        byte[] previous = sectors.put(new SectorKey(file, sectorIndex), data);
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += data.length;
+        Iterator<Map.Entry<SectorKey, byte[]>> eldest = sectors.entrySet().iterator();
+        while (size > capacity && eldest.hasNext()) {
+            size -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Removes all sectors, such as those of files that were deleted.
+     */
+    public synchronized void clear() {
+        sectors.clear();
+        size = 0;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getSectorCount() {
+        return sectors.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Identifies a sector by the file entry it was decoded for.
+     */
+    private static final class SectorKey {
+
+        private final FileDataEntry file;
+        private final int sectorIndex;
+
+        private SectorKey(FileDataEntry file, int sectorIndex) {
+            this.file = file;
+            this.sectorIndex = sectorIndex;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SectorKey)) {
+                return false;
+            }
+            SectorKey key = (SectorKey) other;
+            return file == key.file && sectorIndex == key.sectorIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(file) + sectorIndex;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package settings;
 
+import frost.NameHashCache;
+
 public final class MpqSettings {
 
     public enum LogSettings {
@@ -27,10 +29,20 @@ public final class MpqSettings {
         ENCRYPTION_DISABLED
     }
 
+    public enum TableReadMode {
+        SERIAL,
+        PARALLEL
+    }
+
     private LogSettings logSettings = LogSettings.WARN;
     private MpqOpenSettings mpqOpenSettings = MpqOpenSettings.ANY;
     private CompressionSettings compressionSettings = CompressionSettings.DEFLATE;
     private SecuritySettings securitySettings = SecuritySettings.ENCRYPTION_ENABLED;
+    private TableReadMode tableReadMode = TableReadMode.SERIAL;
+    private int extractionThreads = 1;
+    private long sectorCacheSize = 32 * 1024 * 1024;
+    private int nameHashCacheSize = 0;
+    private NameHashCache nameHashCache;
 
     public MpqSettings(LogSettings logSettings, MpqOpenSettings mpqOpenSettings,
                        CompressionSettings compressionSettings, SecuritySettings securitySettings) {
@@ -148,4 +160,76 @@ public final class MpqSettings {
     public void setSecuritySettings(SecuritySettings securitySettings) {
         this.securitySettings = securitySettings;
     }
+
+    /**
+     * How the tables of an archive are read. SERIAL (the default) reads everything
+     * up front. PARALLEL decrypts the hash and block tables at the same
+     * time and reads the internal listfile only when file names are
+     * first needed.
+     *
+     * @return Table read mode
+     */
+    public TableReadMode getTableReadMode() {
+        return tableReadMode;
+    }
+
+    public void setTableReadMode(TableReadMode tableReadMode) {
+        this.tableReadMode = tableReadMode;
+    }
+
+    /**
+     * Number of threads that decode files during extractAllKnown.
+     * 1 (the default) extracts one file at a time on the calling thread.
+     *
+     * @return Decoding thread count
+     */
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
+
+    public void setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = extractionThreads;
+    }
+
+    /**
+     * Maximum bytes of decoded sectors each archive keeps cached.
+     * 0 disables the cache. Takes effect when an archive is opened.
+     *
+     * @return Sector cache size in bytes
+     */
+    public long getSectorCacheSize() {
+        return sectorCacheSize;
+    }
+
+    public void setSectorCacheSize(long sectorCacheSize) {
+        this.sectorCacheSize = sectorCacheSize;
+    }
+
+    /**
+     * Maximum number of file names whose hashes are cached.
+     * 0 (the default) disables the cache.
+     *
+     * @return Name hash cache size in names
+     */
+    public int getNameHashCacheSize() {
+        return nameHashCacheSize;
+    }
+
+    public synchronized void setNameHashCacheSize(int nameHashCacheSize) {
+        this.nameHashCacheSize = nameHashCacheSize;
+        this.nameHashCache = null;
+    }
+
+    /**
+     * Retrieves the name hash cache shared by every archive
+     * opened with these settings.
+     *
+     * @return Name hash cache, or null if disabled
+     */
+    public synchronized NameHashCache getNameHashCache() {
+        if (nameHashCache == null && nameHashCacheSize > 0) {
+            nameHashCache = new NameHashCache(nameHashCacheSize);
+        }
+        return nameHashCache;
+    }
 }
@@ -0,0 +1,68 @@
+package stepDefs;
+
+import compression.AdpcmCompression;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.junit.Assert;
+
+import static utils.ByteUtils.bytesToString;
+import static utils.ByteUtils.stringToBytes;
+
+public class AdpcmCompressionStepDefs {
+
+    private byte[] input;
+    private byte[] results;
+    private AdpcmCompression compression;
+
+    @Given("adpcm bytes {string}")
+    public void adpcm_bytes(String bytes) {
+        input = stringToBytes(bytes);
+    }
+
+    @Given("an adpcm sine wave of {int} samples on {int} channels")
+    public void an_adpcm_sine_wave_of_samples_on_channels(int samples, int channels) {
+        input = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            // Every channel gets its own pitch
+            int channel = i % channels;
+            int sample = (int) (12000 * Math.sin(i / channels * 0.05 * (channel + 1)));
+            input[i * 2] = (byte) sample;
+            input[i * 2 + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    @When("adpcm data is decompressed with {int} channels and size {int}")
+    public void adpcm_data_is_decompressed_with_channels_and_size(int channels, int size) {
+        results = new AdpcmCompression(channels).undo(input, new byte[size]);
+    }
+
+    @When("data is adpcm compressed with {int} channels")
+    public void data_is_adpcm_compressed_with_channels(int channels) {
+        compression = new AdpcmCompression(channels);
+        results = compression.apply(input);
+    }
+
+    @Then("adpcm decompressed data should be {string}")
+    public void adpcm_decompressed_data_should_be(String bytes) {
+        Assert.assertEquals(bytes, bytesToString(results));
+    }
+
+    @Then("adpcm compressed data should be at most half the original size plus {int} bytes")
+    public void adpcm_compressed_data_should_be_at_most_half_the_original_size_plus_bytes(int extra) {
+        Assert.assertTrue(results.length <= input.length / 2 + extra);
+    }
+
+    @Then("adpcm decompressing should give samples within {int} of the original data")
+    public void adpcm_decompressing_should_give_samples_within_of_the_original_data(int tolerance) {
+        byte[] decompressed = new byte[input.length];
+        int written = compression.undo(results, 0, results.length, decompressed, 0, decompressed.length);
+        Assert.assertEquals(input.length, written);
+        for (int i = 0; i < input.length; i += 2) {
+            int expected = (short) ((input[i] & 0xFF) | (input[i + 1] << 8));
+            int actual = (short) ((decompressed[i] & 0xFF) | (decompressed[i + 1] << 8));
+            Assert.assertTrue("Sample " + i / 2 + ": " + actual + " instead of " + expected,
+                    Math.abs(expected - actual) <= tolerance);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package stepDefs;
+
+import compression.BZip2Compression;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.junit.Assert;
+
+import java.util.Arrays;
+
+import static utils.ByteUtils.bytesToString;
+import static utils.ByteUtils.stringToBytes;
+
+public class BZip2CompressionStepDefs {
+
+    private byte[] input;
+    private byte[] results;
+    private final BZip2Compression compression = new BZip2Compression();
+
+    @Given("bzip2 bytes:")
+    public void bzip2_bytes(String body) {
+        input = stringToBytes(body);
+    }
+
+    @When("bzip2 data is decompressed with size {int}")
+    public void bzip2_data_is_decompressed_with_size(int desiredSize) {
+        results = compression.undo(input, new byte[desiredSize]);
+    }
+
+    @When("byte {int} of the bzip2 data is changed")
+    public void byte_of_the_bzip2_data_is_changed(int index) {
+        input[index] ^= 0x10;
+    }
+
+    @Then("bzip2 decompressed data should be:")
+    public void bzip2_decompressed_data_should_be(String data) {
+        Assert.assertEquals(data, bytesToString(results));
+    }
+
+    @Then("decompressing the same bzip2 bytes into offset {int} of a larger array should give the same data")
+    public void decompressing_the_same_bzip2_bytes_into_offset_of_a_larger_array_should_give_the_same_data(int offset) {
+        byte[] larger = new byte[offset + results.length + offset];
+        int written = compression.undo(input, 0, input.length, larger, offset, results.length);
+        Assert.assertEquals(results.length, written);
+        Assert.assertArrayEquals(results, Arrays.copyOfRange(larger, offset, offset + written));
+    }
+
+    @Then("bzip2 decompressing with size {int} should fail")
+    public void bzip2_decompressing_with_size_should_fail(int desiredSize) {
+        try {
+            compression.undo(input, new byte[desiredSize]);
+            Assert.fail("Decompressed corrupted data");
+        } catch (IllegalArgumentException expected) {
+            // Caught by the CRC or by the block structure
+        }
+    }
+}
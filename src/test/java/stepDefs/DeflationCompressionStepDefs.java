@@ -6,6 +6,8 @@ import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
 import org.junit.Assert;
 
+import java.util.Arrays;
+
 import static utils.ByteUtils.bytesToString;
 import static utils.ByteUtils.stringToBytes;
 
@@ -27,6 +29,38 @@ public class DeflationCompressionStepDefs {
         results = compression.undo(input, results);
     }
 
+    @Then("inflating the same bytes from offset {int} should give the same data")
+    public void inflating_the_same_bytes_from_offset_should_give_the_same_data(int offset) {
+        // Surround the input with junk so only the slice can be read.
+        byte[] padded = new byte[offset + input.length + offset];
+        Arrays.fill(padded, (byte) 0x5A);
+        System.arraycopy(input, 0, padded, offset, input.length);
+        byte[] sliced = compression.undo(padded, offset, input.length, new byte[results.length]);
+        Assert.assertArrayEquals(results, sliced);
+    }
+
+    @Then("inflating the same bytes into offset {int} of a larger array should give the same data")
+    public void inflating_the_same_bytes_into_offset_of_a_larger_array_should_give_the_same_data(int offset) {
+        byte[] larger = new byte[offset + results.length + offset];
+        int written = compression.undo(input, 0, input.length, larger, offset, results.length);
+        Assert.assertEquals(results.length, written);
+        Assert.assertArrayEquals(results, Arrays.copyOfRange(larger, offset, offset + written));
+        // Nothing is written past the requested slice.
+        for (int i = offset + written; i < larger.length; i++) {
+            Assert.assertEquals(0, larger[i]);
+        }
+    }
+
+    @Then("inflating with size {int} should fail")
+    public void inflating_with_size_should_fail(int desiredSize) {
+        try {
+            new DeflationCompression().undo(input, new byte[desiredSize]);
+            Assert.fail("Inflated corrupted data");
+        } catch (IllegalArgumentException expected) {
+            // Reported by the inflater
+        }
+    }
+
     @Then("inflated data should be:")
     public void inflated_data_should_be(String data) {
         Assert.assertEquals(data, bytesToString(results));
@@ -0,0 +1,93 @@
+package stepDefs;
+
+import compression.DeflationCompression;
+import compression.HuffmanCompression;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.junit.Assert;
+import settings.MpqContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static utils.ByteUtils.bytesToString;
+import static utils.ByteUtils.stringToBytes;
+
+public class HuffmanCompressionStepDefs {
+
+    private byte[] input;
+    private byte[] results;
+    private final HuffmanCompression compression = new HuffmanCompression();
+
+    @Given("huffman text {string}")
+    public void huffman_text(String text) {
+        input = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Given("huffman text:")
+    public void huffman_text_block(String body) {
+        input = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Given("huffman bytes 0 to 255 repeated {int} times")
+    public void huffman_bytes_0_to_255_repeated_times(int times) {
+        input = new byte[256 * times];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+    }
+
+    @Given("huffman compressed bytes:")
+    public void huffman_compressed_bytes(String body) {
+        results = stringToBytes(body);
+    }
+
+    @When("data is huffman compressed")
+    public void data_is_huffman_compressed() {
+        results = compression.apply(input);
+    }
+
+    @When("huffman compressed data is deflated")
+    public void huffman_compressed_data_is_deflated() {
+        results = new DeflationCompression().apply(results);
+    }
+
+    @Then("huffman compressed data should be smaller than the original data")
+    public void huffman_compressed_data_should_be_smaller_than_the_original_data() {
+        Assert.assertTrue(results.length < input.length);
+    }
+
+    @Then("huffman decompressing should give the original data")
+    public void huffman_decompressing_should_give_the_original_data() {
+        byte[] decompressed = compression.undo(results, new byte[input.length]);
+        Assert.assertEquals(bytesToString(input), bytesToString(decompressed));
+    }
+
+    @Then("huffman decompressing into {int} bytes should only write {int} bytes")
+    public void huffman_decompressing_into_bytes_should_only_write_bytes(int size, int expected) {
+        byte[] dest = new byte[size];
+        int written = compression.undo(results, 0, results.length, dest, 0, size);
+        Assert.assertEquals(expected, written);
+        Assert.assertEquals(bytesToString(input), bytesToString(Arrays.copyOf(dest, written)));
+    }
+
+    @Then("decompressing with flags {int} should give the original data {int} times")
+    public void decompressing_with_flags_should_give_the_original_data_times(int flags, int times) {
+        MpqContext context = new MpqContext();
+        for (int i = 0; i < times; i++) {
+            byte[] decompressed = context.getCompressionHandler().decompress(results, flags, input.length);
+            Assert.assertEquals(bytesToString(input), bytesToString(decompressed));
+        }
+    }
+
+    @Then("huffman decompressing should fail")
+    public void huffman_decompressing_should_fail() {
+        try {
+            compression.undo(results, new byte[16]);
+            Assert.fail("Decompressed data without weights");
+        } catch (IllegalArgumentException expected) {
+            // No weight table for this type
+        }
+    }
+}
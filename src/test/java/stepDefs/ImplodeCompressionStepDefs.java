@@ -0,0 +1,59 @@
+package stepDefs;
+
+import compression.ImplodeCompression;
+import compression.exploder.Exploder;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.junit.Assert;
+
+import java.nio.charset.StandardCharsets;
+
+import static utils.ByteUtils.bytesToString;
+import static utils.ByteUtils.stringToBytes;
+
+public class ImplodeCompressionStepDefs {
+
+    private byte[] input;
+    private byte[] results;
+
+    @Given("implode text {string}")
+    public void implode_text(String text) {
+        input = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Given("implode text:")
+    public void implode_text_block(String body) {
+        input = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Given("implode bytes 0 to 255 repeated {int} times")
+    public void implode_bytes_0_to_255_repeated_times(int times) {
+        input = new byte[256 * times];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+    }
+
+    @When("data is imploded with literal mode {int} and dictionary size {int}")
+    public void data_is_imploded_with_literal_mode_and_dictionary_size(int literalMode, int dictSizeByte) {
+        results = new ImplodeCompression(literalMode, dictSizeByte).apply(input);
+    }
+
+    @Then("imploded data should be:")
+    public void imploded_data_should_be(String data) {
+        Assert.assertArrayEquals(stringToBytes(data), results);
+    }
+
+    @Then("exploding the imploded data should give the original data")
+    public void exploding_the_imploded_data_should_give_the_original_data() {
+        byte[] exploded = new byte[input.length];
+        Exploder.pkexplode(results, exploded);
+        Assert.assertEquals(bytesToString(input), bytesToString(exploded));
+    }
+
+    @Then("imploded data should be smaller than the original data")
+    public void imploded_data_should_be_smaller_than_the_original_data() {
+        Assert.assertTrue(results.length < input.length);
+    }
+}
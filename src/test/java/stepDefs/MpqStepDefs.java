@@ -1,11 +1,13 @@
 package stepDefs;
 
 import frost.FrostMpq;
+import frost.ListfileResolver;
 import interfaces.IFrostMpq;
 import io.FileWriter;
 import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
+import model.SectorCache;
 import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.mockito.Mockito;
@@ -16,7 +18,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.mockito.Matchers.any;
 
@@ -28,6 +40,17 @@ public class MpqStepDefs {
     private MpqContext context;
     private FileWriter mockFileWriter;
     private Set<String> fileNames;
+    private String streamedFileName;
+    private byte[] streamedData;
+    private int rangeOffset;
+    private byte[] rangeData;
+    private int rangeLength;
+    private List<String> concurrentNames;
+    private List<Future<byte[]>> concurrentReads;
+    private int deletedCount;
+    private ListfileResolver resolver;
+    private int resolvedCount;
+    private byte[] addedData;
 
     @Given("MPQ file: {string}")
     public void mpq_file(String fileName) {
@@ -43,6 +66,16 @@ public class MpqStepDefs {
         this.mpq = new FrostMpq(mpqFile, context);
     }
 
+    @When("MPQ file is read in parallel mode")
+    public void mpq_file_is_read_in_parallel_mode() {
+        this.context = new MpqContext();
+        MpqSettings settings = new MpqSettings(MpqSettings.LogSettings.NONE,
+                MpqSettings.MpqOpenSettings.ANY);
+        settings.setTableReadMode(MpqSettings.TableReadMode.PARALLEL);
+        this.context.setSettings(settings);
+        this.mpq = new FrostMpq(mpqFile, context);
+    }
+
     private void makeMockFileWriter() {
         this.mockFileWriter = Mockito.mock(FileWriter.class);
         this.context.setFileWriter(mockFileWriter);
@@ -57,6 +90,56 @@ public class MpqStepDefs {
         }
     }
 
+    @When("File is streamed: {string}")
+    public void file_is_streamed(String fileName) throws Exception {
+        this.streamedFileName = fileName;
+        this.streamedData = IOUtils.toByteArray(mpq.openStream(fileName));
+    }
+
+    @Then("Streamed data should match the file bytes")
+    public void streamed_data_should_match_the_file_bytes() {
+        Assert.assertArrayEquals(mpq.getFileBytes(streamedFileName), streamedData);
+    }
+
+    @When("{int} bytes at {int} are read from {string}")
+    public void bytes_at_are_read_from(int length, int offset, String fileName) {
+        this.streamedFileName = fileName;
+        this.rangeOffset = offset;
+        this.rangeLength = length;
+        this.rangeData = mpq.read(fileName, offset, length);
+    }
+
+    @Then("Range should match the file bytes")
+    public void range_should_match_the_file_bytes() {
+        byte[] fileBytes = mpq.getFileBytes(streamedFileName);
+        Assert.assertEquals(rangeLength, rangeData.length);
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, rangeOffset,
+                rangeOffset + rangeLength), rangeData);
+    }
+
+    @When("Sector cache is limited to {int} bytes")
+    public void sector_cache_is_limited_to_bytes(int bytes) {
+        context.getSettings().setSectorCacheSize(bytes);
+        this.mpq = new FrostMpq(mpqFile, context);
+    }
+
+    @Then("Reading {string} twice should hit the sector cache")
+    public void reading_twice_should_hit_the_sector_cache(String fileName) {
+        SectorCache cache = ((FrostMpq) mpq).getSectorCache();
+        long hits = cache.getHits();
+        Assert.assertArrayEquals(mpq.getFileBytes(fileName), mpq.getFileBytes(fileName));
+        Assert.assertTrue(cache.getHits() > hits);
+        Assert.assertTrue(cache.getSize() <= cache.getCapacity());
+    }
+
+    @Then("Reading {string} twice should not hit the sector cache")
+    public void reading_twice_should_not_hit_the_sector_cache(String fileName) {
+        SectorCache cache = ((FrostMpq) mpq).getSectorCache();
+        Assert.assertArrayEquals(mpq.getFileBytes(fileName), mpq.getFileBytes(fileName));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
     @When("All known files are extracted")
     public void all_known_files_are_extracted() {
         makeMockFileWriter();
@@ -71,6 +154,28 @@ public class MpqStepDefs {
         mpq.extractAllKnown(listfile);
     }
 
+    @When("All known files are extracted with {int} threads")
+    public void all_known_files_are_extracted_with_threads(int threads) {
+        makeMockFileWriter();
+        context.getSettings().setExtractionThreads(threads);
+        mpq.extractAllKnown();
+    }
+
+    @Given("listfile {string} is loaded into a resolver")
+    public void listfile_is_loaded_into_a_resolver(String fileName) throws Exception {
+        resolver = new ListfileResolver(new File(resourcesRoot.getAbsolutePath() + "\\" + fileName));
+    }
+
+    @When("Resolver names are added")
+    public void resolver_names_are_added() {
+        resolvedCount = mpq.addListfile(resolver);
+    }
+
+    @Then("{int} names should have been resolved")
+    public void names_should_have_been_resolved(int count) {
+        Assert.assertEquals(count, resolvedCount);
+    }
+
     @When("File names are retrieved")
     public void file_names_are_retrieved() {
         this.fileNames = mpq.getFileNames();
@@ -132,6 +237,60 @@ public class MpqStepDefs {
             Assert.fail("No file provided");
         }
     }
+    @When("File {string} is added {int} times in a batch")
+    public void file_is_added_times_in_a_batch(String fileName, int copies) throws Exception {
+        File file = new File(resourcesRoot.getAbsolutePath() + "\\" + fileName);
+        byte[] data = IOUtils.toByteArray(new FileInputStream(file));
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < copies; i++) {
+            files.put("batch\\" + i + ".txt", data);
+        }
+        mpq.importFiles(files);
+    }
+
+    @When("Files are deleted in a batch: {string}")
+    public void files_are_deleted_in_a_batch(String fileNames) {
+        deletedCount = mpq.deleteFiles(Arrays.asList(fileNames.split(",")));
+    }
+
+    @Then("{int} files should have been deleted")
+    public void files_should_have_been_deleted(int count) {
+        Assert.assertEquals(count, deletedCount);
+    }
+
+    @When("A compressible file {string} of {int} bytes is added")
+    public void a_compressible_file_of_bytes_is_added(String fileName, int size) {
+        byte[] line = "STRING 1\r\n{\r\nPlayer 1\r\n}\r\n".getBytes();
+        this.addedData = new byte[size];
+        for (int i = 0; i < size; i++) {
+            addedData[i] = line[i % line.length];
+        }
+        mpq.importFile(fileName, addedData);
+    }
+
+    @Then("File {string} should match the added file")
+    public void file_should_match_the_added_file(String fileName) {
+        Assert.assertArrayEquals(addedData, mpq.getFileBytes(fileName));
+    }
+
+    @Then("File on disk {string} should be smaller than {int} bytes")
+    public void file_on_disk_should_be_smaller_than_bytes(String fileName, int size) {
+        File file = new File(resourcesRoot.getAbsolutePath() + "\\" + fileName);
+        Assert.assertTrue(file.length() < size);
+    }
+
+    @Given("MPQ file {string} is copied to {string}")
+    public void mpq_file_is_copied_to(String fileName, String copyName) throws Exception {
+        File source = new File(resourcesRoot.getAbsolutePath() + "\\" + fileName);
+        File copy = new File(resourcesRoot.getAbsolutePath() + "\\" + copyName);
+        Files.copy(source.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @When("File is saved in place")
+    public void file_is_saved_in_place() {
+        mpq.saveInPlace();
+    }
+
     @When("File is saved as {string}")
     public void file_is_saved_as(String fileName) {
         String filePath = resourcesRoot.getAbsolutePath() + "\\" + fileName;
@@ -149,4 +308,28 @@ public class MpqStepDefs {
         File file = new File(filePath);
         Assert.assertTrue(file.exists());
     }
+
+    @When("All known files are read from {int} threads")
+    public void all_known_files_are_read_from_threads(int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        this.concurrentNames = new ArrayList<>();
+        this.concurrentReads = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            for (String fileName : mpq.getFileNames()) {
+                concurrentNames.add(fileName);
+                concurrentReads.add(executor.submit(() -> mpq.getFileBytes(fileName)));
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Then("Every file read should match a single threaded read")
+    public void every_file_read_should_match_a_single_threaded_read() throws Exception {
+        IFrostMpq reference = new FrostMpq(mpqFile, context);
+        for (int i = 0; i < concurrentNames.size(); i++) {
+            byte[] expected = reference.getFileBytes(concurrentNames.get(i));
+            Assert.assertTrue(concurrentNames.get(i),
+                    Arrays.equals(expected, concurrentReads.get(i).get()));
+        }
+    }
 }
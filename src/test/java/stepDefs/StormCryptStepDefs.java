@@ -1,5 +1,6 @@
 package stepDefs;
 
+import frost.FileNameHash;
 import frost.FrostSecurity;
 import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
@@ -8,6 +9,7 @@ import org.junit.Assert;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 import static utils.ByteUtils.bytesToString;
 import static utils.ByteUtils.stringToBytes;
@@ -21,6 +23,7 @@ public class StormCryptStepDefs {
     private ByteBuffer resultByteBuffer;
     private String toHash;
     private int intHash;
+    private FileNameHash allHashes;
 
     @Given("bytes:")
     public void bytes(String bytesBody) {
@@ -35,6 +38,15 @@ public class StormCryptStepDefs {
         resultByteBuffer = frostSecurity.decryptBuffer(inputByteBuffer, key);
     }
 
+    @When("bytes are decrypted in place with key {int}")
+    public void bytes_are_decrypted_in_place_with_key(int key) {
+        this.frostSecurity = new FrostSecurity();
+        result = Arrays.copyOf(input, input.length);
+        frostSecurity.decrypt(result, 0, result.length, key);
+        resultByteBuffer = ByteBuffer.wrap(Arrays.copyOf(input, input.length));
+        frostSecurity.decrypt(resultByteBuffer, 0, input.length, key);
+    }
+
     @When("bytes are encrypted with key {int}")
     public void bytes_are_encrypted_with_key(int key) {
         this.frostSecurity = new FrostSecurity();
@@ -66,4 +78,25 @@ public class StormCryptStepDefs {
     public void hash_should_be(int expected) {
         Assert.assertEquals(expected, intHash);
     }
+
+    @When("all hashes are computed")
+    public void all_hashes_are_computed() {
+        this.frostSecurity = new FrostSecurity();
+        allHashes = frostSecurity.hashAll(toHash);
+    }
+
+    @Then("name A hash should be {int}")
+    public void name_a_hash_should_be(int expected) {
+        Assert.assertEquals(expected, allHashes.getNameA());
+    }
+
+    @Then("name B hash should be {int}")
+    public void name_b_hash_should_be(int expected) {
+        Assert.assertEquals(expected, allHashes.getNameB());
+    }
+
+    @Then("file key hash should be {int}")
+    public void file_key_hash_should_be(int expected) {
+        Assert.assertEquals(expected, allHashes.getFileKey());
+    }
 }
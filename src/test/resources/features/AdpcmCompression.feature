@@ -0,0 +1,28 @@
+Feature: Test the IMA ADPCM Compression algorithm
+
+  Scenario: Test decompressing repeated mono samples
+    Given adpcm bytes "0,4,52,18,-128,-128"
+    When adpcm data is decompressed with 1 channels and size 6
+    Then adpcm decompressed data should be "52,18,52,18,52,18"
+
+  Scenario: Test step index markers keep the channel
+    Given adpcm bytes "0,4,1,0,2,0,-127,-128,-128"
+    When adpcm data is decompressed with 2 channels and size 8
+    Then adpcm decompressed data should be "1,0,2,0,1,0,2,0"
+
+  Scenario: Test decompressing stops at the end of the output
+    Given adpcm bytes "0,4,52,18,-128,-128"
+    When adpcm data is decompressed with 1 channels and size 4
+    Then adpcm decompressed data should be "52,18,52,18"
+
+  Scenario: Test compressing and decompressing a mono sound
+    Given an adpcm sine wave of 2048 samples on 1 channels
+    When data is adpcm compressed with 1 channels
+    Then adpcm compressed data should be at most half the original size plus 16 bytes
+    And adpcm decompressing should give samples within 256 of the original data
+
+  Scenario: Test compressing and decompressing a stereo sound
+    Given an adpcm sine wave of 2048 samples on 2 channels
+    When data is adpcm compressed with 2 channels
+    Then adpcm compressed data should be at most half the original size plus 16 bytes
+    And adpcm decompressing should give samples within 512 of the original data
@@ -0,0 +1,28 @@
+Feature: Test the BZip2 Compression algorithm
+
+  Scenario: Test decompressing bzip2 data
+    Given bzip2 bytes:
+    """
+    66,90,104,57,49,65,89,38,83,89,-32,14,80,-45,0,0,79,-33,-128,0,18,64,0,19,-128,34,-79,92,0,42,-123,90,42,32,0,112,80,0,0,0,1,20,-87,-111,-111,-90,-102,104,122,-115,52,-4,-87,2,37,13,33,13,-61,-125,-125,-117,102,-98,-113,-25,-78,23,-67,65,-26,-61,-86,30,80,-71,-43,8,108,-124,33,100,62,63,89,101,-32,-24,-53,-69,45,59,-76,-8,101,-89,22,-9,65,15,-30,-18,72,-89,10,18,28,1,-54,26,96
+    """
+    When bzip2 data is decompressed with size 246
+    Then bzip2 decompressed data should be:
+    """
+    83,84,82,73,78,71,32,53,13,10,123,13,10,74,117,110,103,108,101,32,69,115,99,97,112,101,13,10,125,13,10,13,10,83,84,82,73,78,71,32,54,13,10,123,13,10,65,110,121,13,10,125,13,10,13,10,83,84,82,73,78,71,32,55,13,10,123,13,10,80,108,97,121,101,114,32,50,13,10,125,13,10,83,84,82,73,78,71,32,53,13,10,123,13,10,74,117,110,103,108,101,32,69,115,99,97,112,101,13,10,125,13,10,13,10,83,84,82,73,78,71,32,54,13,10,123,13,10,65,110,121,13,10,125,13,10,13,10,83,84,82,73,78,71,32,55,13,10,123,13,10,80,108,97,121,101,114,32,50,13,10,125,13,10,83,84,82,73,78,71,32,53,13,10,123,13,10,74,117,110,103,108,101,32,69,115,99,97,112,101,13,10,125,13,10,13,10,83,84,82,73,78,71,32,54,13,10,123,13,10,65,110,121,13,10,125,13,10,13,10,83,84,82,73,78,71,32,55,13,10,123,13,10,80,108,97,121,101,114,32,50,13,10,125,13,10
+    """
+
+  Scenario: Test decompressing bzip2 data into the middle of an array
+    Given bzip2 bytes:
+    """
+    66,90,104,57,49,65,89,38,83,89,-32,14,80,-45,0,0,79,-33,-128,0,18,64,0,19,-128,34,-79,92,0,42,-123,90,42,32,0,112,80,0,0,0,1,20,-87,-111,-111,-90,-102,104,122,-115,52,-4,-87,2,37,13,33,13,-61,-125,-125,-117,102,-98,-113,-25,-78,23,-67,65,-26,-61,-86,30,80,-71,-43,8,108,-124,33,100,62,63,89,101,-32,-24,-53,-69,45,59,-76,-8,101,-89,22,-9,65,15,-30,-18,72,-89,10,18,28,1,-54,26,96
+    """
+    When bzip2 data is decompressed with size 246
+    Then decompressing the same bzip2 bytes into offset 9 of a larger array should give the same data
+
+  Scenario: Test decompressing corrupted bzip2 data
+    Given bzip2 bytes:
+    """
+    66,90,104,57,49,65,89,38,83,89,-32,14,80,-45,0,0,79,-33,-128,0,18,64,0,19,-128,34,-79,92,0,42,-123,90,42,32,0,112,80,0,0,0,1,20,-87,-111,-111,-90,-102,104,122,-115,52,-4,-87,2,37,13,33,13,-61,-125,-125,-117,102,-98,-113,-25,-78,23,-67,65,-26,-61,-86,30,80,-71,-43,8,108,-124,33,100,62,63,89,101,-32,-24,-53,-69,45,59,-76,-8,101,-89,22,-9,65,15,-30,-18,72,-89,10,18,28,1,-54,26,96
+    """
+    When byte 60 of the bzip2 data is changed
+    Then bzip2 decompressing with size 246 should fail
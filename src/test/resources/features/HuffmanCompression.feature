@@ -0,0 +1,49 @@
+Feature: Test the MPQ Huffman Compression algorithm
+
+  Scenario: Test compressing and decompressing text
+    Given huffman text:
+    """
+    STRING 18
+    // Units: h002 (Wolf [1]), Name (Name)
+    {
+    Wolf [1]
+    }
+
+    STRING 19
+    // Units: h002 (Wolf [1]), Propernames (Proper Names)
+    {
+    Runner
+    }
+
+    STRING 20
+    // Units: h000 (Wolf Entry Node), Name (Name)
+    {
+    Wolf Entry Node
+    }
+    """
+    When data is huffman compressed
+    Then huffman compressed data should be smaller than the original data
+    And huffman decompressing should give the original data
+
+  Scenario: Test compressing and decompressing every byte value
+    Given huffman bytes 0 to 255 repeated 12 times
+    When data is huffman compressed
+    Then huffman decompressing should give the original data
+
+  Scenario: Test decompressing data compressed twice
+    Given huffman text "Wolf Entry Node, Wolf Entry Node, Wolf Entry Node, Runner, Runner"
+    When data is huffman compressed
+    And huffman compressed data is deflated
+    Then decompressing with flags 3 should give the original data 3 times
+
+  Scenario: Test decompressing stops at the end of the data
+    Given huffman text "AIAIAIAIAIAIA"
+    When data is huffman compressed
+    Then huffman decompressing into 100 bytes should only write 13 bytes
+
+  Scenario: Test decompressing a compression type without weights
+    Given huffman compressed bytes:
+    """
+    6,0,0,0
+    """
+    Then huffman decompressing should fail
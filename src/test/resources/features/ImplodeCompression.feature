@@ -0,0 +1,59 @@
+Feature: Test the PKWARE Implode Compression algorithm
+
+  Scenario: Test imploding the format specification example
+    Given implode text "AIAIAIAIAIAIA"
+    When data is imploded with literal mode 0 and dictionary size 4
+    Then imploded data should be:
+    """
+    0,4,-126,36,37,-113,-128,127
+    """
+    And exploding the imploded data should give the original data
+
+  Scenario: Test imploding binary data with a 4K dictionary
+    Given implode text:
+    """
+    STRING 1
+    {
+    Player 1
+    }
+
+    STRING 3
+    // Units: h001 (Runner), Name (Name)
+    {
+    Runner
+    }
+
+    STRING 4
+    // Units: h001 (Runner), Propernames (Proper Names)
+    {
+    Runner
+    }
+    """
+    When data is imploded with literal mode 0 and dictionary size 6
+    Then exploding the imploded data should give the original data
+    And imploded data should be smaller than the original data
+
+  Scenario: Test imploding text with a 1K dictionary
+    Given implode text:
+    """
+    STRING 18
+    // Units: h002 (Wolf [1]), Name (Name)
+    {
+    Wolf [1]
+    }
+
+    STRING 19
+    // Units: h002 (Wolf [1]), Propernames (Proper Names)
+    {
+    Runner
+    }
+    """
+    When data is imploded with literal mode 1 and dictionary size 4
+    Then exploding the imploded data should give the original data
+    And imploded data should be smaller than the original data
+
+  Scenario: Test imploding every byte value with a 2K dictionary
+    Given implode bytes 0 to 255 repeated 20 times
+    When data is imploded with literal mode 1 and dictionary size 5
+    Then exploding the imploded data should give the original data
+    And imploded data should be smaller than the original data
@@ -27,6 +27,76 @@ Feature: MPQ end to end tests
     Then File should exist: "test.txt"
     Given File is deleted: "saved.w3x"
 
+  Scenario: Test updating an MPQ in place
+    Given File is deleted: "updated.w3x"
+    Given MPQ file "JungleEscape.w3x" is copied to "updated.w3x"
+    Given MPQ file: "updated.w3x"
+    When MPQ file is read
+    When File is added "test.txt"
+    When File is saved in place
+    Given MPQ file: "updated.w3x"
+    When MPQ file is read
+    Then File should exist: "test.txt"
+    Then File should exist: "war3map.j"
+    Then MPQ should have 20 total files
+    Given File is deleted: "updated.w3x"
+
+  Scenario: Test reusing the space of a deleted file in place
+    Given File is deleted: "reused.w3x"
+    Given MPQ file "JungleEscape.w3x" is copied to "reused.w3x"
+    Given MPQ file: "reused.w3x"
+    When MPQ file is read
+    When Files are deleted in a batch: "war3map.j"
+    When File is added "test.txt"
+    When File is saved in place
+    Given MPQ file: "reused.w3x"
+    When MPQ file is read
+    Then File should exist: "test.txt"
+    Then MPQ should have 19 total files
+    Then File on disk "reused.w3x" should be smaller than 49626 bytes
+    Given File is deleted: "reused.w3x"
+
+  Scenario: Test importing a compressed file
+    Given File is deleted: "compressed.w3x"
+    Given MPQ file "JungleEscape.w3x" is copied to "compressed.w3x"
+    Given MPQ file: "compressed.w3x"
+    When MPQ file is read
+    When A compressible file "generated.txt" of 100000 bytes is added
+    Then File "generated.txt" should match the added file
+    When File is saved in place
+    Given MPQ file: "compressed.w3x"
+    When MPQ file is read
+    Then File "generated.txt" should match the added file
+    Then File should exist: "war3map.j"
+    Then File on disk "compressed.w3x" should be smaller than 100000 bytes
+    Given File is deleted: "compressed.w3x"
+
+  Scenario: Test importing and deleting files in a batch
+    Given MPQ file: "JungleEscape.w3x"
+    When MPQ file is read
+    When File "test.txt" is added 3 times in a batch
+    Then MPQ should have 22 total files
+    Then File should exist: "batch\2.txt"
+    When Files are deleted in a batch: "batch\0.txt,batch\1.txt,DoesNotExist.txt"
+    Then 2 files should have been deleted
+    Then MPQ should have 20 total files
+    Then File should exist: "batch\2.txt"
+
+  Scenario: Test resolving one listfile against many archives
+    Given listfile "listfile.txt" is loaded into a resolver
+    Given MPQ file: "VampirismSpeed.w3x"
+    When MPQ file is read
+    When Resolver names are added
+    Then 2 names should have been resolved
+    When File names are retrieved
+    Then There should be 84 file names
+    Given MPQ file: "JungleEscape.w3x"
+    When MPQ file is read
+    When Resolver names are added
+    Then 4 names should have been resolved
+    When File names are retrieved
+    Then There should be 19 file names
+
   Scenario: Test reading basic protected map
     Given MPQ file: "VampirismSpeed.w3x"
     When MPQ file is read
@@ -37,6 +107,14 @@ Feature: MPQ end to end tests
     Then File should exist: "Ls3.blp"
     When File is extracted: "Scripts\war3map.j"
     Then File should have been extracted: "Scripts\war3map.j"
+    When File is streamed: "Scripts\war3map.j"
+    Then Streamed data should match the file bytes
+    When 100 bytes at 5000 are read from "Scripts\war3map.j"
+    Then Range should match the file bytes
+    When Sector cache is limited to 0 bytes
+    Then Reading "Scripts\war3map.j" twice should not hit the sector cache
+    When Sector cache is limited to 1048576 bytes
+    Then Reading "Scripts\war3map.j" twice should hit the sector cache
     When File is extracted: "DoesNotExist.txt"
     Then 0 files should have been extracted
     When All known files are extracted
@@ -45,6 +123,18 @@ Feature: MPQ end to end tests
     Then There should be 82 file names
     When All known files are extracted with listfile "listfile.txt"
     Then 84 files should have been extracted
+    When All known files are extracted with 4 threads
+    Then 84 files should have been extracted
+    Given File is deleted: "saved.w3x"
+    Given a real file writer
+    When File is added "test.txt"
+    When File is saved as "saved.w3x"
+    Then File should exist on disk "saved.w3x"
+    Given MPQ file: "saved.w3x"
+    When MPQ file is read
+    Then File should exist: "test.txt"
+    Then File should exist: "Scripts\war3map.j"
+    Given File is deleted: "saved.w3x"
 
   Scenario: Test reading complex protected map
     Given File is deleted: "saved.w3x"
@@ -56,4 +146,19 @@ Feature: MPQ end to end tests
     Given MPQ file: "saved.w3x"
     When MPQ file is read
     Then File should exist: "test.txt"
-    Given File is deleted: "saved.w3x"
\ No newline at end of file
+    Given File is deleted: "saved.w3x"
+
+  Scenario: Test opening an MPQ in parallel mode
+    Given MPQ file: "VampirismSpeed.w3x"
+    When MPQ file is read in parallel mode
+    Then MPQ should have 82 total files
+    Then MPQ should have 82 known files
+    Then File should exist: "Scripts\war3map.j"
+    When File is streamed: "Scripts\war3map.j"
+    Then Streamed data should match the file bytes
+
+  Scenario: Test reading files from many threads
+    Given MPQ file: "VampirismSpeed.w3x"
+    When MPQ file is read
+    When All known files are read from 16 threads
+    Then Every file read should match a single threaded read
\ No newline at end of file